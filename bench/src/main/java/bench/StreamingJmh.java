@@ -0,0 +1,248 @@
+package bench;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Microbenchmarks JMH de los caminos calientes del streaming (ver bench/pom.xml).
+// JMH no admite benchmarks en el paquete por defecto, y desde un paquete con nombre no se pueden
+// nombrar las clases de src/: se llega a ellas con MethodHandle static final, que el JIT trata
+// como constantes e inlinea igual que una llamada directa. Los tipos del paquete por defecto
+// quedan como Object en la firma de cada handle.
+// Lo que no existe en el árbol medido se busca como opcional, para poder medir también la línea
+// base (-Dapp.src, ver bench/pom.xml): sin JitterBuffer el buffer de audio es la
+// LinkedBlockingQueue de 50 bloques que usaba el cliente, y las pruebas de la cabecera de
+// secuencia fallan con UnsupportedOperationException (JMH las marca y sigue con las demás).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamingJmh {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final Class<?> SERVER = type("MusicServer");
+    private static final Class<?> JITTER_BUFFER = optionalType("JitterBuffer");
+    private static final Class<?> PLAYBACK_STATS = optionalType("PlaybackStats");
+    // Buffer de audio del cliente antes de JitterBuffer
+    private static final int BASELINE_QUEUE_CAPACITY = 50;
+    private static final Class<?> QUEUE = JITTER_BUFFER != null ? JITTER_BUFFER : BlockingQueue.class;
+    private static final Class<?> ELEMENT = JITTER_BUFFER != null ? byte[].class : Object.class;
+
+    private static final MethodHandle NEW_SERVER = constructor(SERVER, int.class, String.class);
+    private static final MethodHandle CREATE_PACKET = method(SERVER, "createPacket", int.class, byte[].class);
+    private static final MethodHandle ENCODE_SEQ = optionalMethod(SERVER, "encodeSeqNum", int.class, byte[].class);
+    private static final MethodHandle DECODE_SEQ = optionalMethod(SERVER, "decodeSeqNum", byte[].class);
+    private static final MethodHandle HANDLE_REQUEST = method(SERVER, "handleRequest", DatagramSocket.class, DatagramPacket.class);
+    private static final MethodHandle FIND_FILE = method(SERVER, "findFileRobust", String.class);
+
+    private static final MethodHandle NEW_STATS = JITTER_BUFFER != null ? constructor(PLAYBACK_STATS) : null;
+    private static final MethodHandle NEW_BUFFER = JITTER_BUFFER != null ? constructor(JITTER_BUFFER, int.class, PLAYBACK_STATS) : null;
+    private static final MethodHandle IS_READY = JITTER_BUFFER != null ? method(JITTER_BUFFER, "isReady") : null;
+    private static final MethodHandle FIX_TARGET = JITTER_BUFFER != null ? optionalMethod(JITTER_BUFFER, "fixTarget", int.class) : null;
+    // Mismas firmas para JitterBuffer y para BlockingQueue<byte[]>
+    private static final MethodHandle OFFER = method(QUEUE, "offer", ELEMENT)
+            .asType(MethodType.methodType(boolean.class, Object.class, byte[].class));
+    private static final MethodHandle OFFER_TIMED = method(QUEUE, "offer", ELEMENT, long.class, TimeUnit.class)
+            .asType(MethodType.methodType(boolean.class, Object.class, byte[].class, long.class, TimeUnit.class));
+    private static final MethodHandle POLL = method(QUEUE, "poll", long.class, TimeUnit.class)
+            .asType(MethodType.methodType(byte[].class, Object.class, long.class, TimeUnit.class));
+
+    // Servidor sobre una carpeta de fileCount canciones vacías y un archivo de 4 MB en memoria
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param("5000")
+        public int fileCount;
+
+        Path folder;
+        Object server;
+        byte[] fileBytes;
+        int totalPackets;
+        byte[] header;
+        String lastSong;
+        DatagramSocket socket;
+        DatagramPacket buscar;
+        int seq;
+
+        @Setup
+        public void setup() throws Throwable {
+            folder = Files.createTempDirectory("bench-songs");
+            for (int i = 0; i < fileCount; i++) {
+                Files.createFile(folder.resolve(String.format("cancion_%05d.wav", i)));
+            }
+            lastSong = String.format("CANCION_%05d.WAV", fileCount - 1);
+            server = (Object) NEW_SERVER.invokeExact(0, folder.toString());
+            fileBytes = new byte[4 * 1024 * 1024];
+            new Random(42).nextBytes(fileBytes);
+            totalPackets = fileBytes.length / 1024;
+            header = (byte[]) CREATE_PACKET.invokeExact(server, 1234, fileBytes);
+            socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            // Fallo de búsqueda: el servidor no responde, así que no se mide el envío
+            byte[] msg = "BUSCAR:no_existe.wav".getBytes();
+            buscar = new DatagramPacket(msg, msg.length, InetAddress.getLoopbackAddress(), 9);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            socket.close();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(folder)) {
+                for (Path p : ds) Files.delete(p);
+            }
+            Files.delete(folder);
+        }
+    }
+
+    // Buffer de jitter ya lleno hasta el objetivo (la cola de la línea base, hasta la mitad):
+    // cada operación es un offer y un poll
+    @State(Scope.Thread)
+    public static class Buffer {
+        Object queue;
+        final byte[] audio = new byte[1024];
+
+        @Setup
+        public void setup() throws Throwable {
+            queue = newQueue();
+            if (IS_READY == null) {
+                for (int i = 0; i < BASELINE_QUEUE_CAPACITY / 2; i++) {
+                    if (!(boolean) OFFER.invokeExact(queue, audio)) break;
+                }
+                return;
+            }
+            while (!(boolean) IS_READY.invokeExact(queue)) {
+                if (!(boolean) OFFER.invokeExact(queue, audio)) break;
+            }
+        }
+    }
+
+    // Productor (receptor GBN) y consumidor (hilo de audio) compartiendo un buffer, como en el cliente.
+    // Objetivo fijo de un paquete: se mide el traspaso y no el re-buffering adaptativo, que en un
+    // bucle sin pausa entre paquetes no para de vaciarse y volver a llenarse.
+    @State(Scope.Group)
+    public static class Handoff {
+        Object queue;
+        final byte[] audio = new byte[1024];
+
+        @Setup(Level.Iteration)
+        public void setup() throws Throwable {
+            queue = newQueue();
+            if (FIX_TARGET != null) FIX_TARGET.invokeExact(queue, 1);
+        }
+    }
+
+    private static Object newQueue() throws Throwable {
+        if (NEW_BUFFER == null) return new LinkedBlockingQueue<byte[]>(BASELINE_QUEUE_CAPACITY);
+        return (Object) NEW_BUFFER.invokeExact(512, (Object) NEW_STATS.invokeExact());
+    }
+
+    @Benchmark
+    public byte[] createPacket(Server s) throws Throwable {
+        return (byte[]) CREATE_PACKET.invokeExact(s.server, s.seq++ % s.totalPackets, s.fileBytes);
+    }
+
+    @Benchmark
+    public byte[] seqNumEncode(Server s) throws Throwable {
+        if (ENCODE_SEQ == null) throw new UnsupportedOperationException("MusicServer sin encodeSeqNum");
+        ENCODE_SEQ.invokeExact(s.seq++, s.header);
+        return s.header;
+    }
+
+    @Benchmark
+    public int seqNumDecode(Server s) throws Throwable {
+        if (DECODE_SEQ == null) throw new UnsupportedOperationException("MusicServer sin decodeSeqNum");
+        return (int) DECODE_SEQ.invokeExact(s.header);
+    }
+
+    @Benchmark
+    public void handleRequestBuscar(Server s) throws Throwable {
+        HANDLE_REQUEST.invokeExact(s.server, s.socket, s.buscar);
+    }
+
+    @Benchmark
+    public File findFileRobust(Server s) throws Throwable {
+        return (File) FIND_FILE.invokeExact(s.server, s.lastSong);
+    }
+
+    @Benchmark
+    public void audioQueueOfferPoll(Buffer b, Blackhole bh) throws Throwable {
+        bh.consume((boolean) OFFER.invokeExact(b.queue, b.audio));
+        bh.consume((byte[]) POLL.invokeExact(b.queue, 0L, TimeUnit.MILLISECONDS));
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean handoffProducer(Handoff h) throws Throwable {
+        return (boolean) OFFER_TIMED.invokeExact(h.queue, h.audio, 100L, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public byte[] handoffConsumer(Handoff h) throws Throwable {
+        return (byte[]) POLL.invokeExact(h.queue, 100L, TimeUnit.MILLISECONDS);
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static Class<?> optionalType(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle optionalMethod(Class<?> owner, String name, Class<?>... params) {
+        try {
+            owner.getDeclaredMethod(name, params);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        return method(owner, name, params);
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... params) {
+        try {
+            Constructor<?> c = owner.getDeclaredConstructor(params);
+            c.setAccessible(true);
+            MethodHandle h = LOOKUP.unreflectConstructor(c);
+            return h.asType(hideDefaultPackage(h.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?>... params) {
+        try {
+            Method m = owner.getDeclaredMethod(name, params);
+            m.setAccessible(true);
+            MethodHandle h = LOOKUP.unreflect(m);
+            return h.asType(hideDefaultPackage(h.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // MusicServer, JitterBuffer... -> Object, para poder escribir la llamada desde este paquete
+    private static MethodType hideDefaultPackage(MethodType t) {
+        if (t.returnType().getPackageName().isEmpty()) t = t.changeReturnType(Object.class);
+        for (int i = 0; i < t.parameterCount(); i++) {
+            if (t.parameterType(i).getPackageName().isEmpty()) t = t.changeParameterType(i, Object.class);
+        }
+        return t;
+    }
+}
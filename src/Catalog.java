@@ -0,0 +1,271 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Catálogo de canciones del servidor con instantánea binaria persistente.
+// Al arrancar se mapea la instantánea en memoria y solo se vuelven a abrir los archivos cuyo
+// tamaño o fecha de modificación cambiaron; el formato WAV (del que sale la tasa de bytes que
+// se anuncia en el META) se lee de la instantánea. Se reescribe cuando algo cambia y al apagar.
+// Cada escritura es una generación nueva (<instantánea>.<n>) y nunca sustituye a un archivo que
+// pueda seguir mapeado (en Windows eso falla mientras el mapeo no se libere); las generaciones
+// viejas se borran cuando se puede.
+// Se catalogan todos los archivos de la carpeta, como buscaba antes el servidor; LIST solo
+// muestra los .wav.
+//
+// Formato (big-endian): "SPCT" | versión int | n int | n x entrada
+//   entrada: longNombre short | nombre UTF-8 | tamaño long | mtime long |
+//            canales short | frecuencia int | bits short
+public class Catalog {
+    private static final int MAGIC = 0x53504354; // "SPCT"
+    private static final int VERSION = 2;
+    // Tras un fallo de búsqueda se re-escanea la carpeta como mucho una vez por segundo
+    private static final long MISS_RESCAN_INTERVAL_MS = 1000;
+
+    private final File folder;
+    private final File snapshot;
+    private final ServerMetrics metrics;
+    private volatile Map<String, Entry> entries = Collections.emptyMap(); // nombre en minúsculas
+    private volatile boolean loaded = false;
+    private long lastRefresh;
+    private long generation; // la de la última instantánea leída o escrita
+
+    public Catalog(File folder, File snapshot, ServerMetrics metrics) {
+        this.folder = folder;
+        this.snapshot = snapshot;
+        this.metrics = metrics;
+    }
+
+    static class Entry {
+        final String name;
+        final long size;
+        final long mtime;
+        final int channels;
+        final int sampleRate;
+        final int bits;
+
+        Entry(String name, long size, long mtime, int channels, int sampleRate, int bits) {
+            this.name = name;
+            this.size = size;
+            this.mtime = mtime;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.bits = bits;
+        }
+
+        // 0 si no es un WAV reconocible
+        int bytesPerSecond() {
+            return sampleRate * channels * (bits / 8);
+        }
+    }
+
+    // Carga la instantánea y la reconcilia con la carpeta. Devuelve cuántos archivos se re-escanearon.
+    public synchronized int refresh() {
+        Map<String, Entry> previous = loaded ? entries : readSnapshot();
+        Map<String, Entry> current = new HashMap<>();
+        int rescanned = 0;
+        File[] files = folder.listFiles((d, name) -> !isSnapshotFile(name));
+        if (files != null) {
+            for (File f : files) {
+                if (!f.isFile()) continue;
+                String key = f.getName().toLowerCase();
+                Entry old = previous.get(key);
+                if (old != null && old.size == f.length() && old.mtime == f.lastModified() && old.name.equals(f.getName())) {
+                    current.put(key, old);
+                } else {
+                    current.put(key, scan(f));
+                    rescanned++;
+                }
+            }
+        }
+        boolean changed = rescanned > 0 || current.size() != previous.size();
+        entries = current;
+        loaded = true;
+        lastRefresh = System.currentTimeMillis();
+        metrics.catalogEntries.set(current.size());
+        metrics.catalogRescans.add(rescanned);
+        if (changed) writeSnapshot();
+        return rescanned;
+    }
+
+    public File find(String name) {
+        if (!loaded) refresh();
+        Entry e = entries.get(name.toLowerCase());
+        if (e == null && refreshAfterMiss()) e = entries.get(name.toLowerCase());
+        // Borrado desde el último escaneo
+        if (e != null && !new File(folder, e.name).isFile()) {
+            refresh();
+            e = entries.get(name.toLowerCase());
+        }
+        return e == null ? null : new File(folder, e.name);
+    }
+
+    public Entry entry(String name) {
+        if (!loaded) refresh();
+        return entries.get(name.toLowerCase());
+    }
+
+    // Canciones nuevas añadidas con el servidor en marcha
+    private synchronized boolean refreshAfterMiss() {
+        if (System.currentTimeMillis() - lastRefresh < MISS_RESCAN_INTERVAL_MS) return false;
+        refresh();
+        return true;
+    }
+
+    public List<String> names() {
+        if (!loaded) refresh();
+        List<String> names = new ArrayList<>();
+        for (Entry e : entries.values()) {
+            if (e.name.toLowerCase().endsWith(".wav")) names.add(e.name);
+        }
+        Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Lee el chunk "fmt " de la cabecera RIFF/WAVE. Cualquier archivo que no se pueda interpretar
+    // (no es RIFF, chunk "fmt " corto o con valores absurdos) queda como "no es WAV": formato en 0
+    // y tasa 0, pero se sigue catalogando y sirviendo como antes.
+    static Entry scan(File f) {
+        int channels = 0, rate = 0, bits = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            byte[] hdr = new byte[12];
+            if (raf.read(hdr) == 12 && new String(hdr, 0, 4, StandardCharsets.US_ASCII).equals("RIFF")
+                    && new String(hdr, 8, 4, StandardCharsets.US_ASCII).equals("WAVE")) {
+                byte[] chunk = new byte[8];
+                while (raf.read(chunk) == 8) {
+                    String id = new String(chunk, 0, 4, StandardCharsets.US_ASCII);
+                    long len = ByteBuffer.wrap(chunk, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL;
+                    if (id.equals("fmt ")) {
+                        if (len < 16) break; // PCM necesita al menos 16 bytes
+                        byte[] fmt = new byte[(int) Math.min(len, 64)];
+                        raf.readFully(fmt);
+                        ByteBuffer b = ByteBuffer.wrap(fmt).order(ByteOrder.LITTLE_ENDIAN);
+                        int c = b.getShort(2), r = b.getInt(4), bi = b.getShort(14);
+                        if (c > 0 && r > 0 && bi > 0 && (long) r * c * (bi / 8) <= Integer.MAX_VALUE) {
+                            channels = c;
+                            rate = r;
+                            bits = bi;
+                        }
+                        break;
+                    } else {
+                        raf.seek(raf.getFilePointer() + len + (len & 1));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("No se pudo leer la cabecera de " + f.getName() + ": " + e);
+        }
+        return new Entry(f.getName(), f.length(), f.lastModified(), channels, rate, bits);
+    }
+
+    // <instantánea>, <instantánea>.<n> y sus temporales
+    private boolean isSnapshotFile(String name) {
+        String base = snapshot.getName();
+        return name.equals(base) || name.startsWith(base + ".") && name.substring(base.length() + 1).matches("\\d+(\\.tmp)?");
+    }
+
+    // Generaciones presentes, de la más nueva a la más vieja (la instantánea sin número cuenta como 0)
+    private TreeMap<Long, File> generations() {
+        TreeMap<Long, File> found = new TreeMap<>(Comparator.reverseOrder());
+        File dir = snapshot.getAbsoluteFile().getParentFile();
+        String base = snapshot.getName();
+        File[] files = dir == null ? null : dir.listFiles((d, name) -> name.startsWith(base));
+        if (files == null) return found;
+        for (File f : files) {
+            String name = f.getName();
+            if (name.equals(base)) {
+                found.put(0L, f);
+            } else if (name.substring(base.length()).matches("\\.\\d{1,18}")) {
+                found.put(Long.parseLong(name.substring(base.length() + 1)), f);
+            }
+        }
+        return found;
+    }
+
+    // La generación válida más nueva; si está corrupta se prueba la anterior
+    private Map<String, Entry> readSnapshot() {
+        for (Map.Entry<Long, File> g : generations().entrySet()) {
+            Map<String, Entry> map = readSnapshot(g.getValue());
+            if (map != null) {
+                generation = g.getKey();
+                return map;
+            }
+        }
+        return new HashMap<>();
+    }
+
+    // Se mapea y se copia al heap: del mapeo no queda ninguna referencia viva
+    private Map<String, Entry> readSnapshot(File file) {
+        Map<String, Entry> map = new HashMap<>();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            byte[] data = new byte[(int) ch.size()];
+            ch.map(FileChannel.MapMode.READ_ONLY, 0, data.length).get(data);
+            ByteBuffer b = ByteBuffer.wrap(data);
+            if (b.getInt() != MAGIC || b.getInt() != VERSION) return null;
+            int n = b.getInt();
+            for (int i = 0; i < n; i++) {
+                byte[] nameBytes = new byte[b.getShort() & 0xFFFF];
+                b.get(nameBytes);
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                Entry e = new Entry(name, b.getLong(), b.getLong(), b.getShort(), b.getInt(), b.getShort());
+                map.put(name.toLowerCase(), e);
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            // Instantánea corrupta o truncada: se reconstruye desde la carpeta
+            System.err.println("Instantánea del catálogo inválida (" + file.getName() + "): " + e);
+            return null;
+        }
+        return map;
+    }
+
+    // Se escribe a un temporal y se renombra a la generación siguiente para no dejar nunca una
+    // instantánea a medias ni pisar la que se mapeó
+    public synchronized void writeSnapshot() {
+        if (!loaded) return;
+        TreeMap<Long, File> existing = generations();
+        long next = Math.max(generation, existing.isEmpty() ? 0 : existing.firstKey()) + 1;
+        File target = new File(snapshot.getPath() + "." + next);
+        File tmp = new File(target.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            Collection<Entry> all = entries.values();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(all.size());
+            for (Entry e : all) {
+                byte[] nameBytes = e.name.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(nameBytes.length);
+                out.write(nameBytes);
+                out.writeLong(e.size);
+                out.writeLong(e.mtime);
+                out.writeShort(e.channels);
+                out.writeInt(e.sampleRate);
+                out.writeShort(e.bits);
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar la instantánea del catálogo: " + e.getMessage());
+            return;
+        }
+        try {
+            try {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), target.toPath());
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar la instantánea del catálogo: " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        generation = next;
+        // Una generación vieja que siga mapeada no se deja borrar (Windows); se reintenta la próxima vez
+        for (Map.Entry<Long, File> g : generations().entrySet()) {
+            if (g.getKey() < next) g.getValue().delete();
+        }
+    }
+}
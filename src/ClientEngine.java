@@ -0,0 +1,569 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Motor de cliente reutilizable: muchas sesiones de streaming GBN sobre un único DatagramChannel.
+// Un solo hilo recibe y reparte cada datagrama según su origen (el servidor usa un socket efímero
+// por sesión). El META de una sesión nueva se asocia por el id de PLAYID y el de una sesión
+// retomada por su token. Nada de la API bloquea: play/find/request devuelven CompletableFuture y
+// cada sesión es un Flow.Publisher de bloques de audio, o se lee con poll() desde un hilo de audio.
+// Lo usan MusicClient, MusicClientGUI y, sin audio, LoadGenerator.
+public class ClientEngine implements Closeable {
+    private static final int MAX_DATAGRAM = 65507;
+    private static final int BUFFER_PACKETS = 512;
+    // Todas las sesiones llegan al mismo socket: con el buffer por defecto del SO las ráfagas
+    // de varias sesiones a la vez se pierden antes de leerlas
+    private static final int SOCKET_RECEIVE_BUFFER = 4 << 20;
+    private static final int WINDOW_UPDATE_THRESHOLD = 16;
+    // PLAYID sin META: se reintenta con espera doble cada vez (1 s, 2 s, 4 s) y, si nadie
+    // responde, la sesión falla. El servidor reconoce los reintentos por el id y reenvía el META.
+    private static final long OPEN_TIMEOUT_MS = 1000;
+    private static final int OPEN_ATTEMPTS = 3;
+    // Con más réplicas detrás se espera menos (1 s + 2 s) antes de pasar a la siguiente
+    private static final int FAILOVER_ATTEMPTS = 2;
+    // Sesión sin pausar que no oye nada del servidor en este tiempo: o se perdió el SUSPENDED o
+    // se perdieron ACKs. Se manda RESUME_SESSION (el servidor lo ignora si la sesión sigue viva) y
+    // se repite el último ACK, y así cada STALL_RETRY_MS mientras siga callado.
+    private static final long STALL_RETRY_MS = 3000;
+
+    public enum State { ENDED, STOPPED, EXPIRED, FAILED }
+
+    private final DatagramChannel channel;
+    private final Thread receiver;
+    private final ScheduledExecutorService timers;
+    private final Executor deliveries = ForkJoinPool.commonPool();
+    private final AtomicLong nextId = new AtomicLong();
+    private volatile boolean running = true;
+
+    private final Map<SocketAddress, Session> byStream = new ConcurrentHashMap<>();
+    private final Map<String, Session> opening = new ConcurrentHashMap<>();
+    private final Map<String, Session> byToken = new ConcurrentHashMap<>();
+    // Peticiones de texto (LIST, BUSCAR, RESOLVE, STATS): una en vuelo por destino, porque las
+    // respuestas no dicen a qué petición contestan
+    private final Map<SocketAddress, CompletableFuture<String>> requests = new ConcurrentHashMap<>();
+    private final Map<SocketAddress, CompletableFuture<String>> requestTails = new ConcurrentHashMap<>();
+
+    public ClientEngine() throws IOException {
+        this.channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_RECEIVE_BUFFER);
+        channel.bind(null);
+        this.timers = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "client-engine-timers");
+            t.setDaemon(true);
+            return t;
+        });
+        this.receiver = new Thread(this::receiveLoop, "client-engine-rx");
+        receiver.setDaemon(true);
+        receiver.start();
+        timers.scheduleWithFixedDelay(this::recoverStalled, STALL_RETRY_MS, STALL_RETRY_MS / 3, TimeUnit.MILLISECONDS);
+    }
+
+    private void recoverStalled() {
+        for (Session s : byToken.values()) {
+            if (!s.paused && !s.done.isDone() && s.idleMillis() > STALL_RETRY_MS && s.retryDue()) s.recover();
+        }
+    }
+
+    public int getLocalPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // Abre una sesión con PLAYID; se completa al llegar el META
+    public CompletableFuture<Session> play(String song, InetSocketAddress server) {
+        return open(song, server, OPEN_ATTEMPTS);
+    }
+
+    // Réplicas en orden de preferencia (las de find): si una no responde al PLAYID se abre en la siguiente
+    public CompletableFuture<Session> play(String song, List<InetSocketAddress> replicas) {
+        if (replicas.isEmpty()) return CompletableFuture.failedFuture(new IOException("Ningún servidor tiene " + song));
+        if (replicas.size() == 1) return open(song, replicas.get(0), OPEN_ATTEMPTS);
+        return open(song, replicas.get(0), FAILOVER_ATTEMPTS)
+                .handle((s, err) -> err == null ? CompletableFuture.completedFuture(s)
+                        : err instanceof TimeoutException ? play(song, replicas.subList(1, replicas.size()))
+                        : CompletableFuture.<Session>failedFuture(err))
+                .thenCompose(f -> f);
+    }
+
+    private CompletableFuture<Session> open(String song, InetSocketAddress server, int attempts) {
+        Session s = new Session(Long.toString(nextId.incrementAndGet()), song, server);
+        opening.put(s.id, s);
+        sendOpen(s, 1, attempts);
+        return s.opened;
+    }
+
+    private void sendOpen(Session s, int attempt, int attempts) {
+        if (s.opened.isDone()) return;
+        send(s.server, "PLAYID:" + s.id + ":" + s.song);
+        timers.schedule(() -> {
+            if (s.opened.isDone()) return;
+            if (attempt < attempts) {
+                sendOpen(s, attempt + 1, attempts);
+            } else {
+                opening.remove(s.id);
+                s.opened.completeExceptionally(new TimeoutException("Sin respuesta de " + s.server + " para " + s.song));
+                s.finish(State.FAILED);
+            }
+        }, OPEN_TIMEOUT_MS << (attempt - 1), TimeUnit.MILLISECONDS);
+    }
+
+    // Petición de texto con una sola respuesta; se completa con null si no llega a tiempo
+    public CompletableFuture<String> request(InetSocketAddress to, String msg, long timeoutMs) {
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        requestTails.compute(to, (k, tail) -> {
+            CompletableFuture<String> previous = tail != null ? tail : CompletableFuture.completedFuture(null);
+            previous.whenComplete((v, e) -> {
+                requests.put(to, reply);
+                send(to, msg);
+                reply.completeOnTimeout(null, timeoutMs, TimeUnit.MILLISECONDS);
+            });
+            return reply;
+        });
+        reply.whenComplete((v, e) -> requests.remove(to, reply));
+        return reply;
+    }
+
+    // Servidores que tienen la canción, en orden de preferencia (vacía si nadie la tiene). Con
+    // directorio su respuesta manda, también NOT_FOUND, en una sola ida y vuelta; solo si no
+    // contesta se pregunta con BUSCAR a todos los servidores a la vez y gana el primero que la tenga.
+    public CompletableFuture<List<InetSocketAddress>> find(String song, String directory, List<InetSocketAddress> servers) {
+        if (directory == null) return searchServers(song, servers);
+        return request(address(directory), "RESOLVE:" + song, 1000).thenCompose(res -> res != null
+                ? CompletableFuture.completedFuture(DirectoryServer.parseFound(res))
+                : searchServers(song, servers));
+    }
+
+    private CompletableFuture<List<InetSocketAddress>> searchServers(String song, List<InetSocketAddress> servers) {
+        CompletableFuture<List<InetSocketAddress>> result = new CompletableFuture<>();
+        AtomicInteger left = new AtomicInteger(servers.size());
+        if (servers.isEmpty()) result.complete(Collections.emptyList());
+        for (InetSocketAddress server : servers) {
+            request(server, "BUSCAR:" + song, 500).thenAccept(res -> {
+                if (res != null && res.startsWith("FOUND")) result.complete(Collections.singletonList(server));
+                else if (left.decrementAndGet() == 0) result.complete(Collections.emptyList());
+            });
+        }
+        return result;
+    }
+
+    static InetSocketAddress address(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        return new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+    }
+
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+        byte[] data = buffer.array();
+        while (running) {
+            try {
+                buffer.clear();
+                SocketAddress from = channel.receive(buffer);
+                dispatch(from, data, buffer.position());
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (running) e.printStackTrace();
+            } catch (RuntimeException e) {
+                System.err.println("Datagrama inválido: " + e);
+            }
+        }
+    }
+
+    private void dispatch(SocketAddress from, byte[] data, int len) {
+        Session s = byStream.get(from);
+        if (s != null) {
+            s.onDatagram(data, len);
+            return;
+        }
+        if (startsWith(data, len, "META:")) {
+            // META:<total>:<token>[:<id>:<bytesPorSegundo>]
+            String[] meta = text(data, len).split(":");
+            Session target = meta.length > 3 ? opening.remove(meta[3])
+                    : meta.length > 2 ? byToken.get(meta[2]) : null;
+            if (target != null) {
+                target.onMeta(from, Integer.parseInt(meta[1]), meta.length > 2 ? meta[2] : null,
+                        meta.length > 4 ? Integer.parseInt(meta[4]) : 0);
+            } else if (meta.length > 3) {
+                // Respuesta a un reintento de PLAYID de una sesión que ya se abrió o se abandonó
+                send(from, "STOP");
+            }
+            return;
+        }
+        if (startsWith(data, len, "EXPIRED:")) {
+            Session expired = byToken.get(text(data, len).substring(8));
+            if (expired != null) expired.finish(State.EXPIRED);
+            return;
+        }
+        CompletableFuture<String> pending = requests.remove(from);
+        if (pending != null) pending.complete(text(data, len));
+    }
+
+    private static boolean startsWith(byte[] data, int len, String prefix) {
+        if (len < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (data[i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static String text(byte[] data, int len) {
+        return new String(data, 0, len, StandardCharsets.UTF_8).trim();
+    }
+
+    private void send(SocketAddress to, String msg) {
+        try {
+            channel.send(ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8)), to);
+        } catch (IOException e) {
+            if (running) System.err.println("No se pudo enviar a " + to + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!running) return;
+        for (Session s : new ArrayList<>(byStream.values())) s.stop();
+        for (Session s : new ArrayList<>(opening.values())) s.finish(State.FAILED);
+        running = false;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ya cerrado
+        }
+        timers.shutdownNow();
+    }
+
+    // Una canción en streaming. El receptor GBN corre en el hilo del motor; el audio se consume con
+    // poll() (reproductor) o suscribiéndose (Flow), no con los dos a la vez.
+    public class Session implements Flow.Publisher<byte[]> {
+        private final String id;
+        private final String song;
+        private final InetSocketAddress server;
+        private final PlaybackStats stats = new PlaybackStats();
+        private final JitterBuffer buffer = new JitterBuffer(BUFFER_PACKETS, stats);
+        private final CompletableFuture<Session> opened = new CompletableFuture<>();
+        private final CompletableFuture<State> done = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+
+        private volatile SocketAddress stream;
+        private volatile String token;
+        private volatile int total;
+        private volatile int bytesPerSecond;
+        private volatile boolean suspended;
+        private volatile boolean paused;
+        private volatile long lastRecoveryNanos = System.nanoTime();
+        private volatile Runnable onSuspended;
+
+        // Receptor GBN (protegido por el monitor de la sesión: lo tocan el hilo del motor y seek)
+        private int expectedSeq = 0;
+        private volatile int position = -1;
+        private volatile int lastAckedSeq = -1;
+        private volatile int advertisedWindow = 0;
+        private volatile int seekTarget = -1;
+        private CompletableFuture<Void> seekDone;
+        // Lado de audio: paquete del próximo bloque que entrega poll(); cada salto abre una época
+        private int nextPlayPacket = 0;
+        private int seekEpoch = 0;
+        private volatile int lastPolledPacket = -1;
+
+        // Contadores (los escribe solo el hilo del motor)
+        private volatile long packetsReceived;
+        private volatile long packetsDelivered;
+        private volatile long bytesDelivered;
+        private volatile long firstDataNanos = -1;
+        private volatile long lastHeardNanos = System.nanoTime();
+
+        private Delivery delivery;
+
+        Session(String id, String song, InetSocketAddress server) {
+            this.id = id;
+            this.song = song;
+            this.server = server;
+        }
+
+        private synchronized void onMeta(SocketAddress from, int total, String token, int bytesPerSecond) {
+            SocketAddress old = stream;
+            if (old != null) byStream.remove(old, this);
+            stream = from;
+            byStream.put(from, this);
+            this.total = total;
+            if (bytesPerSecond > 0) {
+                this.bytesPerSecond = bytesPerSecond;
+                buffer.setBytesPerSecond(bytesPerSecond);
+            }
+            if (token != null) {
+                this.token = token;
+                byToken.put(token, this);
+            }
+            suspended = false;
+            lastHeardNanos = System.nanoTime();
+            opened.complete(this);
+        }
+
+        private synchronized void onDatagram(byte[] data, int len) {
+            lastHeardNanos = System.nanoTime();
+            if (len == 3 && startsWith(data, len, "END")) {
+                finish(State.ENDED);
+                return;
+            }
+            if (startsWith(data, len, "SUSPENDED:")) {
+                suspended = true;
+                Runnable r = onSuspended;
+                if (r != null) r.run();
+                return;
+            }
+            if (startsWith(data, len, "META:") || len <= 4) return; // META duplicado
+
+            int seqNum = MusicServer.decodeSeqNum(data);
+            packetsReceived++;
+            stats.onPacket();
+            buffer.onArrival(seqNum == expectedSeq);
+            if (seqNum == expectedSeq) {
+                byte[] audio = Arrays.copyOfRange(data, 4, len);
+                // Solo se confirma lo que cabe en el buffer; si no cabe, el servidor lo reenviará
+                if (buffer.offer(audio)) {
+                    if (firstDataNanos < 0) firstDataNanos = System.nanoTime();
+                    packetsDelivered++;
+                    bytesDelivered += audio.length;
+                    position = seqNum;
+                    sendAck(seqNum);
+                    expectedSeq++;
+                    if (seqNum == seekTarget) {
+                        seekTarget = -1;
+                        seekDone.complete(null);
+                    }
+                    Delivery d = delivery;
+                    if (d != null) d.signal();
+                } else {
+                    sendAck(expectedSeq - 1);
+                }
+            } else {
+                // Fuera de orden: ACK duplicado del último en orden para acelerar la recuperación
+                sendAck(expectedSeq - 1);
+            }
+        }
+
+        // ACK:<seq>:<rwnd>, donde rwnd es el espacio libre del buffer de audio en paquetes
+        private void sendAck(int seq) {
+            SocketAddress to = stream;
+            if (to == null) return;
+            int rwnd = buffer.remainingCapacity();
+            lastAckedSeq = seq;
+            advertisedWindow = rwnd;
+            send(to, "ACK:" + seq + ":" + rwnd);
+        }
+
+        // La ventana estaba (casi) cerrada y ya hay sitio: avisar sin esperar a la sonda
+        private void updateWindow() {
+            if (advertisedWindow < WINDOW_UPDATE_THRESHOLD && buffer.remainingCapacity() >= WINDOW_UPDATE_THRESHOLD
+                    && seekTarget < 0 && !done.isDone()) {
+                sendAck(lastAckedSeq);
+            }
+        }
+
+        void finish(State state) {
+            if (!done.complete(state)) return;
+            // Quien espera en play(...).get() no puede quedarse colgado (p. ej. close() con PLAYID en curso)
+            if (!opened.isDone()) opened.completeExceptionally(new IOException("Sesión terminada antes de abrirse: " + state));
+            if (state != State.ENDED) buffer.clear();
+            buffer.markEndOfStream();
+            SocketAddress s = stream;
+            if (s != null) byStream.remove(s, this);
+            if (token != null) byToken.remove(token, this);
+            opening.remove(id, this);
+            synchronized (this) {
+                if (seekDone != null) seekDone.complete(null);
+            }
+            Delivery d = delivery;
+            if (d != null) d.signal();
+        }
+
+        // Lado de audio: null mientras el buffer se (re)llena o si no llega nada
+        public byte[] poll(long timeout, TimeUnit unit) throws InterruptedException {
+            int epoch;
+            synchronized (this) {
+                epoch = seekEpoch;
+            }
+            byte[] data = buffer.poll(timeout, unit);
+            if (data == null) return null;
+            synchronized (this) {
+                // Un bloque sacado justo antes de un salto ya no corresponde a la posición nueva
+                if (epoch != seekEpoch) return null;
+                lastPolledPacket = nextPlayPacket++;
+            }
+            updateWindow();
+            return data;
+        }
+
+        // Paquete de la canción al que pertenece el último bloque entregado por poll()
+        public int lastPolledPacket() {
+            return lastPolledPacket;
+        }
+
+        public void pause() {
+            paused = true;
+            sendControl("PAUSE");
+            stats.setPaused(true);
+            buffer.setPaused(true);
+        }
+
+        // Si el servidor suspendió la sesión, el socket de streaming ya no existe: se retoma por el puerto principal
+        public void resume() {
+            paused = false;
+            sendControl("RESUME");
+            recover();
+            stats.setPaused(false);
+            buffer.setPaused(false);
+        }
+
+        private void recover() {
+            lastRecoveryNanos = System.nanoTime();
+            String t = token;
+            if (t != null) send(server, "RESUME_SESSION:" + t);
+            if (lastAckedSeq != -1) sendAck(lastAckedSeq);
+        }
+
+        private boolean retryDue() {
+            return System.nanoTime() - lastRecoveryNanos > TimeUnit.MILLISECONDS.toNanos(STALL_RETRY_MS);
+        }
+
+        // Salto a un paquete; se completa cuando llega el primer paquete de la nueva posición
+        public synchronized CompletableFuture<Void> seek(int targetPacket) {
+            if (total > 0) targetPacket = Math.min(targetPacket, total - 1);
+            targetPacket = Math.max(0, targetPacket);
+            if (seekDone != null) seekDone.complete(null);
+            seekDone = new CompletableFuture<>();
+            if (done.isDone()) {
+                seekDone.complete(null);
+                return seekDone;
+            }
+            stats.onSeek();
+            buffer.clear();
+            expectedSeq = targetPacket;
+            seekTarget = targetPacket;
+            nextPlayPacket = targetPacket;
+            seekEpoch++;
+            sendControl("SEEK:" + targetPacket);
+            return seekDone;
+        }
+
+        public synchronized CompletableFuture<Void> skip(int packets) {
+            return seek(expectedSeq + packets);
+        }
+
+        // Peso de la sesión en el planificador del servidor; solo puede bajar del que asigna el servidor
+        public void setPriority(int weight) {
+            sendControl("PRIORITY:" + weight);
+        }
+
+        public void stop() {
+            sendControl("STOP");
+            finish(State.STOPPED);
+        }
+
+        public void whenSuspended(Runnable r) {
+            this.onSuspended = r;
+        }
+
+        private void sendControl(String msg) {
+            SocketAddress to = stream;
+            if (to != null) send(to, msg);
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super byte[]> subscriber) {
+            Delivery d = new Delivery(subscriber);
+            synchronized (this) {
+                if (delivery != null) {
+                    subscriber.onSubscribe(d);
+                    subscriber.onError(new IllegalStateException("La sesión ya tiene un suscriptor"));
+                    return;
+                }
+                delivery = d;
+            }
+            subscriber.onSubscribe(d);
+            d.signal();
+        }
+
+        public CompletableFuture<Session> opened() { return opened; }
+        public CompletableFuture<State> done() { return done; }
+        public String song() { return song; }
+        public InetSocketAddress server() { return server; }
+        public String token() { return token; }
+        public int total() { return total; }
+        // Tasa del WAV anunciada por el servidor; 0 si no la conoce
+        public int bytesPerSecond() { return bytesPerSecond; }
+        // Último paquete recibido en orden
+        public int position() { return position; }
+        public boolean isSeeking() { return seekTarget >= 0; }
+        public boolean isSuspended() { return suspended; }
+        public PlaybackStats stats() { return stats; }
+        public JitterBuffer buffer() { return buffer; }
+        public long packetsReceived() { return packetsReceived; }
+        public long packetsDelivered() { return packetsDelivered; }
+        public long bytesDelivered() { return bytesDelivered; }
+        // Tiempo hasta el primer paquete en orden, o -1 si aún no llegó
+        public long firstByteNanos() { return firstDataNanos < 0 ? -1 : firstDataNanos - startNanos; }
+        public long idleMillis() { return (System.nanoTime() - lastHeardNanos) / 1_000_000; }
+
+        // Entrega a un suscriptor Flow: la demanda pendiente es la que deja vaciar el buffer, y con
+        // él la ventana anunciada al servidor, así la contrapresión llega hasta el emisor
+        private class Delivery implements Flow.Subscription {
+            private final Flow.Subscriber<? super byte[]> subscriber;
+            private final AtomicLong demand = new AtomicLong();
+            private final AtomicInteger wip = new AtomicInteger();
+            private volatile boolean cancelled;
+
+            Delivery(Flow.Subscriber<? super byte[]> subscriber) {
+                this.subscriber = subscriber;
+            }
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancelled = true;
+                    subscriber.onError(new IllegalArgumentException("request(" + n + ")"));
+                    return;
+                }
+                demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+                signal();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+            }
+
+            void signal() {
+                if (wip.getAndIncrement() == 0) deliveries.execute(this::drain);
+            }
+
+            private void drain() {
+                int missed = 1;
+                do {
+                    while (!cancelled && demand.get() > 0) {
+                        byte[] data = buffer.pollNow();
+                        if (data == null) break;
+                        if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                        subscriber.onNext(data);
+                        updateWindow();
+                    }
+                    if (!cancelled && done.isDone() && buffer.isEmpty()) {
+                        cancelled = true;
+                        State state = done.join();
+                        if (state == State.ENDED || state == State.STOPPED) subscriber.onComplete();
+                        else subscriber.onError(new IOException("Sesión terminada: " + state));
+                    }
+                    missed = wip.addAndGet(-missed);
+                } while (missed != 0);
+            }
+        }
+    }
+}
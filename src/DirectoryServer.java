@@ -0,0 +1,233 @@
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Servicio de directorio: los MusicServer registran su catálogo aquí y los clientes resuelven
+// una canción con una sola petición en lugar de preguntar a todos los servidores.
+// El directorio no reparte canciones: cada servidor anuncia lo que tiene en su carpeta. El anillo
+// (hashing consistente con nodos virtuales) solo ordena, para cada canción, a los servidores que
+// la tienen: se recorre desde el hash del nombre y se devuelven hasta REPLICAS de ellos en ese
+// orden, que el cliente prueba uno tras otro. Así canciones distintas prefieren servidores
+// distintos, y al entrar o salir un servidor solo cambia la preferida de las canciones que lo
+// tenían (o lo tendrían) como primera opción.
+//
+// Protocolo (UDP, texto):
+//   REGISTER:<puerto>:<época>:<trozo>:<trozos>:<cancion1>,<cancion2>,...   servidor -> directorio (periódico)
+//   RESOLVE:<cancion>   ->  FOUND:<host>:<puerto>[,<host>:<puerto>...]  |  NOT_FOUND
+//   LIST                ->  LIST_RES:<cancion1>,<cancion2>,...
+public class DirectoryServer {
+    private static final int VIRTUAL_NODES = 64;
+    // Un servidor que no se registra en este tiempo sale del anillo
+    private static final long SERVER_TTL_MS = 30_000;
+
+    private final int port;
+    private final int replicas;
+    private final Map<String, Member> members = new ConcurrentHashMap<>();
+    private volatile TreeMap<Long, Member> ring = new TreeMap<>();
+
+    public DirectoryServer(int port, int replicas) {
+        this.port = port;
+        this.replicas = replicas;
+    }
+
+    // Un MusicServer registrado. El catálogo publicado no se toca mientras llega una ronda nueva:
+    // sus trozos se juntan aparte y se sustituye entero cuando están todos.
+    static class Member {
+        final String id; // host:puerto
+        volatile Map<String, String> songs = Collections.emptyMap(); // minúsculas -> nombre original
+        volatile long epoch = -1;
+        volatile long lastSeen;
+        // Ronda en curso (protegida por el monitor del Member)
+        long pendingEpoch = -1;
+        Map<String, String> pending;
+        BitSet pendingChunks;
+
+        Member(String id) {
+            this.id = id;
+        }
+    }
+
+    public void start() {
+        System.out.println("=== DIRECTORIO UDP LISTO EN PUERTO " + port + " (réplicas: " + replicas + ") ===");
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "directory-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleAtFixedRate(this::expireMembers, SERVER_TTL_MS / 3, SERVER_TTL_MS / 3, TimeUnit.MILLISECONDS);
+
+        try (DatagramSocket socket = new DatagramSocket(port)) {
+            byte[] buffer = new byte[65507];
+            while (true) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                try {
+                    handle(socket, packet);
+                } catch (Exception e) {
+                    System.err.println("Petición inválida de " + packet.getSocketAddress() + ": " + e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handle(DatagramSocket socket, DatagramPacket packet) throws Exception {
+        String message = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8).trim();
+        String[] parts = message.split(":", 2);
+        String command = parts[0];
+        String arg = parts.length > 1 ? parts[1] : "";
+
+        if (command.equals("REGISTER")) {
+            String[] reg = arg.split(":", 5);
+            register(packet.getAddress().getHostAddress() + ":" + Integer.parseInt(reg[0]),
+                    Long.parseLong(reg[1]), Integer.parseInt(reg[2]), Integer.parseInt(reg[3]), reg.length > 4 ? reg[4] : "");
+        }
+        else if (command.equals("RESOLVE")) {
+            List<Member> owners = resolve(arg.trim());
+            StringBuilder sb = new StringBuilder();
+            for (Member m : owners) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(m.id);
+            }
+            reply(socket, packet, owners.isEmpty() ? "NOT_FOUND" : "FOUND:" + sb);
+        }
+        else if (command.equals("LIST")) {
+            Set<String> all = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            for (Member m : members.values()) all.addAll(m.songs.values());
+            StringBuilder sb = new StringBuilder("LIST_RES:");
+            for (String s : all) {
+                if (sb.length() + s.length() + 1 > 60_000) break; // Límite de un datagrama
+                sb.append(s).append(",");
+            }
+            reply(socket, packet, sb.toString());
+        }
+    }
+
+    private void reply(DatagramSocket socket, DatagramPacket request, String msg) throws Exception {
+        byte[] data = msg.getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(data, data.length, request.getAddress(), request.getPort()));
+    }
+
+    void register(String id, long epoch, int chunk, int chunks, String songList) {
+        boolean joined = false;
+        Member m = members.get(id);
+        if (m == null) {
+            m = new Member(id);
+            members.put(id, m);
+            joined = true;
+        }
+        synchronized (m) {
+            m.lastSeen = System.currentTimeMillis();
+            // Trozos de rondas ya publicadas o superadas (UDP puede desordenarlos) se descartan
+            if (epoch <= m.epoch || epoch < m.pendingEpoch || chunk < 0 || chunk >= chunks) return;
+            if (epoch > m.pendingEpoch) {
+                // Una ronda anterior que perdió algún trozo se abandona; sigue valiendo la publicada
+                m.pendingEpoch = epoch;
+                m.pending = new HashMap<>();
+                m.pendingChunks = new BitSet(chunks);
+            }
+            if (m.pendingChunks.get(chunk)) return;
+            m.pendingChunks.set(chunk);
+            for (String s : songList.split(",")) {
+                String name = s.trim();
+                if (!name.isEmpty()) m.pending.put(name.toLowerCase(), name);
+            }
+            if (m.pendingChunks.cardinality() == chunks) {
+                m.songs = Collections.unmodifiableMap(m.pending);
+                m.epoch = epoch;
+                m.pending = null;
+                m.pendingChunks = null;
+            }
+        }
+        if (joined) {
+            rebuildRing();
+            System.out.println("Servidor registrado: " + id);
+        }
+    }
+
+    // Recorre el anillo desde el hash de la canción y toma, por orden, los primeros servidores que la tienen
+    List<Member> resolve(String song) {
+        String key = song.toLowerCase();
+        List<Member> owners = new ArrayList<>(replicas);
+        TreeMap<Long, Member> r = ring;
+        if (r.isEmpty()) return owners;
+        Set<String> seen = new HashSet<>();
+        Iterator<Member> it = walk(r, hash(key));
+        while (it.hasNext() && owners.size() < replicas && seen.size() < members.size()) {
+            Member m = it.next();
+            if (!seen.add(m.id)) continue;
+            if (m.songs.containsKey(key)) owners.add(m);
+        }
+        return owners;
+    }
+
+    // Nodos del anillo en sentido horario a partir de h, dando la vuelta una vez. Se recorren las
+    // vistas del TreeMap sin copiarlas: resolve() suele parar tras unos pocos nodos.
+    private static Iterator<Member> walk(TreeMap<Long, Member> r, long h) {
+        Iterator<Member> tail = r.tailMap(h, true).values().iterator();
+        Iterator<Member> head = r.headMap(h, false).values().iterator();
+        return new Iterator<Member>() {
+            public boolean hasNext() {
+                return tail.hasNext() || head.hasNext();
+            }
+
+            public Member next() {
+                return tail.hasNext() ? tail.next() : head.next();
+            }
+        };
+    }
+
+    private void rebuildRing() {
+        TreeMap<Long, Member> r = new TreeMap<>();
+        for (Member m : members.values()) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) r.put(hash(m.id + "#" + i), m);
+        }
+        ring = r;
+    }
+
+    private void expireMembers() {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        for (Member m : members.values()) {
+            if (now - m.lastSeen > SERVER_TTL_MS && members.remove(m.id, m)) {
+                System.out.println("Servidor sin registrarse, fuera del anillo: " + m.id);
+                changed = true;
+            }
+        }
+        if (changed) rebuildRing();
+    }
+
+    static long hash(String key) {
+        try {
+            byte[] d = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) h = (h << 8) | (d[i] & 0xFF);
+            return h;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // FOUND:<host>:<puerto>[,...] -> réplicas en orden de preferencia; vacía para NOT_FOUND o sin respuesta
+    static List<InetSocketAddress> parseFound(String res) {
+        List<InetSocketAddress> replicas = new ArrayList<>();
+        if (res == null || !res.startsWith("FOUND:")) return replicas;
+        for (String hostPort : res.substring(6).split(",")) {
+            int colon = hostPort.lastIndexOf(':');
+            if (colon <= 0) continue;
+            replicas.add(new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1))));
+        }
+        return replicas;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("USO: java DirectoryServer <PUERTO> [REPLICAS]");
+            return;
+        }
+        new DirectoryServer(Integer.parseInt(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 2).start();
+    }
+}
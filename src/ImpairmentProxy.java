@@ -0,0 +1,303 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Proxy UDP en proceso que se coloca entre clientes y un MusicServer e introduce
+// pérdida, reordenamiento, duplicación, retardo y jitter configurables.
+// Cada cliente recibe su propio socket hacia el servidor, así el servidor ve
+// clientes distintos y los paquetes de streaming vuelven al cliente correcto.
+// Cada socket de streaming del servidor tiene además su espejo en el proxy: el cliente ve un
+// origen distinto por sesión, como sin proxy, y puede llevar varias sesiones en un solo socket.
+public class ImpairmentProxy implements Closeable {
+    // Comandos que siempre van al puerto principal del servidor, no al de streaming
+    private static final String[] MAIN_PORT_COMMANDS = {"PLAY", "PLAYID", "BUSCAR", "LIST", "STATS", "RESUME_SESSION"};
+    // Un espejo sin tráfico en ningún sentido durante este tiempo se cierra (la sesión terminó);
+    // lo mismo el socket de un cliente que ya no tiene espejos
+    private static final int MIRROR_IDLE_MS = 30_000;
+
+    private final InetSocketAddress target;
+    private final DatagramSocket clientSide;
+    private final ScheduledExecutorService delayer;
+    private final Map<SocketAddress, Upstream> upstreams = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    private volatile double lossRate;
+    private volatile double duplicateRate;
+    private volatile double reorderRate;
+    private volatile int delayMs;
+    private volatile int jitterMs;
+    private volatile int reorderDelayMs = 20;
+
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong duplicated = new AtomicLong();
+    private final AtomicLong reordered = new AtomicLong();
+
+    public ImpairmentProxy(int listenPort, String serverHost, int serverPort) throws IOException {
+        this.target = new InetSocketAddress(InetAddress.getByName(serverHost), serverPort);
+        this.clientSide = new DatagramSocket(listenPort);
+        this.delayer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "proxy-delay");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public ImpairmentProxy loss(double rate) { this.lossRate = rate; return this; }
+    public ImpairmentProxy duplicate(double rate) { this.duplicateRate = rate; return this; }
+    public ImpairmentProxy reorder(double rate) { this.reorderRate = rate; return this; }
+    public ImpairmentProxy delay(int ms) { this.delayMs = ms; return this; }
+    public ImpairmentProxy jitter(int ms) { this.jitterMs = ms; return this; }
+    public ImpairmentProxy reorderDelay(int ms) { this.reorderDelayMs = ms; return this; }
+
+    public int getPort() {
+        return clientSide.getLocalPort();
+    }
+
+    public void start() {
+        Thread t = new Thread(this::clientLoop, "proxy-clients");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Cliente -> Servidor
+    private void clientLoop() {
+        byte[] buffer = new byte[2048];
+        while (running) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                clientSide.receive(packet);
+                Upstream up = upstreams.computeIfAbsent(packet.getSocketAddress(), this::openUpstream);
+                if (up == null) continue;
+                up.lastActivity = System.currentTimeMillis();
+
+                SocketAddress dest = isMainPortCommand(packet) ? target : up.serverPeer;
+                byte[] data = Arrays.copyOf(packet.getData(), packet.getLength());
+                impair(up.socket, data, dest);
+            } catch (IOException e) {
+                if (running) e.printStackTrace();
+            }
+        }
+    }
+
+    private Upstream openUpstream(SocketAddress client) {
+        try {
+            Upstream up = new Upstream(client);
+            Thread t = new Thread(() -> serverLoop(up), "proxy-upstream-" + up.socket.getLocalPort());
+            t.setDaemon(true);
+            t.start();
+            return up;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Servidor -> Cliente (un hilo por cliente)
+    private void serverLoop(Upstream up) {
+        byte[] buffer = new byte[2048];
+        try {
+            up.socket.setSoTimeout(MIRROR_IDLE_MS / 3);
+        } catch (SocketException e) {
+            e.printStackTrace();
+        }
+        while (running) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    up.socket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    if (up.mirrors.isEmpty() && System.currentTimeMillis() - up.lastActivity > MIRROR_IDLE_MS) break;
+                    continue;
+                }
+                up.lastActivity = System.currentTimeMillis();
+                byte[] data = Arrays.copyOf(packet.getData(), packet.getLength());
+                SocketAddress peer = packet.getSocketAddress();
+                if (peer.equals(target)) {
+                    impair(clientSide, data, up.client);
+                    continue;
+                }
+                // El servidor responde desde un socket efímero por sesión: los ACKs deben ir ahí
+                up.serverPeer = peer;
+                Mirror m = up.mirrors.computeIfAbsent(peer, p -> openMirror(up, p));
+                if (m == null) continue;
+                m.lastActivity = System.currentTimeMillis();
+                impair(m.socket, data, up.client);
+            } catch (IOException e) {
+                if (running) e.printStackTrace();
+            }
+        }
+        // Primero fuera del mapa: un datagrama nuevo del cliente abre otro socket en lugar de usar este
+        upstreams.remove(up.client, up);
+        up.socket.close();
+    }
+
+    private Mirror openMirror(Upstream up, SocketAddress serverPeer) {
+        try {
+            Mirror m = new Mirror(serverPeer);
+            Thread t = new Thread(() -> mirrorLoop(up, m), "proxy-mirror-" + m.socket.getLocalPort());
+            t.setDaemon(true);
+            t.start();
+            return m;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Cliente -> socket de sesión del servidor (ACKs y comandos de control)
+    private void mirrorLoop(Upstream up, Mirror m) {
+        byte[] buffer = new byte[2048];
+        try {
+            m.socket.setSoTimeout(MIRROR_IDLE_MS / 3);
+            while (running) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    m.socket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    if (System.currentTimeMillis() - m.lastActivity > MIRROR_IDLE_MS) break;
+                    continue;
+                }
+                m.lastActivity = System.currentTimeMillis();
+                impair(up.socket, Arrays.copyOf(packet.getData(), packet.getLength()), m.serverPeer);
+            }
+        } catch (IOException e) {
+            if (running) e.printStackTrace();
+        } finally {
+            up.mirrors.remove(m.serverPeer, m);
+            m.socket.close();
+        }
+    }
+
+    private boolean isMainPortCommand(DatagramPacket packet) {
+        // El comando es el texto hasta el primer ':' (los datos de audio nunca coinciden)
+        int len = Math.min(packet.getLength(), 32);
+        String head = new String(packet.getData(), 0, len);
+        int colon = head.indexOf(':');
+        String command = (colon >= 0 ? head.substring(0, colon) : head).trim();
+        for (String cmd : MAIN_PORT_COMMANDS) {
+            if (command.equals(cmd)) return true;
+        }
+        return false;
+    }
+
+    private void impair(DatagramSocket out, byte[] data, SocketAddress dest) {
+        // Un hilo espejo puede tener aún un datagrama en la mano cuando se cierra el proxy
+        if (!running) return;
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        if (rnd.nextDouble() < lossRate) {
+            dropped.incrementAndGet();
+            return;
+        }
+        int copies = 1;
+        if (rnd.nextDouble() < duplicateRate) {
+            duplicated.incrementAndGet();
+            copies = 2;
+        }
+        for (int i = 0; i < copies; i++) {
+            long delay = delayMs;
+            if (jitterMs > 0) delay += rnd.nextInt(jitterMs + 1);
+            // Retener el paquete deja que los siguientes lo adelanten
+            if (rnd.nextDouble() < reorderRate) {
+                reordered.incrementAndGet();
+                delay += reorderDelayMs;
+            }
+            if (delay <= 0) {
+                send(out, data, dest);
+            } else {
+                try {
+                    delayer.schedule(() -> send(out, data, dest), delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    return; // Cerrado entre la comprobación de running y aquí
+                }
+            }
+        }
+    }
+
+    private void send(DatagramSocket out, byte[] data, SocketAddress dest) {
+        try {
+            out.send(new DatagramPacket(data, data.length, dest));
+            forwarded.incrementAndGet();
+        } catch (IOException e) {
+            if (running) e.printStackTrace();
+        }
+    }
+
+    public String statsJson() {
+        return String.format(Locale.ROOT,
+                "{\"forwarded\":%d,\"dropped\":%d,\"duplicated\":%d,\"reordered\":%d,\"clients\":%d}",
+                forwarded.get(), dropped.get(), duplicated.get(), reordered.get(), upstreams.size());
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        clientSide.close();
+        for (Upstream up : upstreams.values()) {
+            up.socket.close();
+            for (Mirror m : up.mirrors.values()) m.socket.close();
+        }
+        delayer.shutdownNow();
+    }
+
+    private class Upstream {
+        final SocketAddress client;
+        final DatagramSocket socket;
+        final Map<SocketAddress, Mirror> mirrors = new ConcurrentHashMap<>();
+        // Último socket de sesión visto, para los clientes que mandan los ACKs al puerto del proxy
+        volatile SocketAddress serverPeer;
+        volatile long lastActivity = System.currentTimeMillis();
+
+        Upstream(SocketAddress client) throws IOException {
+            this.client = client;
+            this.socket = new DatagramSocket();
+            // Un cliente puede traer muchas sesiones (ClientEngine): todas llegan a este socket
+            this.socket.setReceiveBufferSize(4 << 20);
+            this.serverPeer = target;
+        }
+    }
+
+    // Socket del proxy que representa ante el cliente a un socket de sesión del servidor
+    private static class Mirror {
+        final SocketAddress serverPeer;
+        final DatagramSocket socket;
+        volatile long lastActivity = System.currentTimeMillis();
+
+        Mirror(SocketAddress serverPeer) throws IOException {
+            this.serverPeer = serverPeer;
+            this.socket = new DatagramSocket();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("USO: java ImpairmentProxy <PUERTO_LOCAL> <HOST_SERVIDOR> <PUERTO_SERVIDOR>"
+                    + " [--loss P] [--dup P] [--reorder P] [--delay MS] [--jitter MS]");
+            return;
+        }
+        ImpairmentProxy proxy = new ImpairmentProxy(Integer.parseInt(args[0]), args[1], Integer.parseInt(args[2]));
+        for (int i = 3; i + 1 < args.length; i += 2) {
+            if (!proxy.configure(args[i], args[i + 1])) System.out.println("Opción desconocida: " + args[i]);
+        }
+        proxy.start();
+        System.out.println("=== PROXY UDP EN PUERTO " + proxy.getPort() + " -> " + args[1] + ":" + args[2] + " ===");
+        while (true) {
+            Thread.sleep(5000);
+            System.out.println(proxy.statsJson());
+        }
+    }
+
+    // Opciones de línea de comandos compartidas con LoadGenerator. Devuelve false si no es del proxy.
+    boolean configure(String flag, String value) {
+        switch (flag) {
+            case "--loss": loss(Double.parseDouble(value)); return true;
+            case "--dup": duplicate(Double.parseDouble(value)); return true;
+            case "--reorder": reorder(Double.parseDouble(value)); return true;
+            case "--delay": delay(Integer.parseInt(value)); return true;
+            case "--jitter": jitter(Integer.parseInt(value)); return true;
+            default: return false;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.concurrent.*;
+
+// Buffer de jitter adaptativo entre el receptor GBN y el hilo de audio.
+// La profundidad objetivo se calcula con el jitter observado (PlaybackStats) y la tasa de
+// paquetes fuera de orden: en enlaces limpios se queda en unos pocos paquetes y en enlaces
+// malos crece. Si se vacía, deja de entregar audio hasta recuperar el objetivo
+// (re-buffering) en lugar de reproducir paquete a paquete con cortes. Una pausa del usuario no
+// entrega audio pero tampoco cuenta como corte ni agranda el objetivo.
+// El hilo de audio espera en el monitor del buffer; lo despiertan los paquetes que llegan
+// mientras se rellena, el fin de la canción, la reanudación y los saltos.
+public class JitterBuffer {
+    private static final int PACKET_BYTES = 1024;
+    private static final int DEFAULT_BYTES_PER_SECOND = 176400;
+    private static final double MIN_TARGET_MS = 30;
+    private static final double MAX_TARGET_MS = 2000;
+    // Lo que tarda GBN en recuperar una pérdida (timeout del servidor + reenvío de la ventana)
+    private static final double LOSS_RECOVERY_MS = 150;
+    private static final double UNDERRUN_BOOST_MS = 100;
+
+    private final int capacity;
+    private final BlockingQueue<byte[]> queue;
+    private volatile PlaybackStats stats;
+
+    private volatile int bytesPerSecond = DEFAULT_BYTES_PER_SECOND;
+    private volatile double lossRate;
+    private volatile double boostMs;
+    private volatile int target;
+    private volatile int fixedTarget;
+    private volatile boolean buffering = true;
+    private volatile boolean endOfStream = false;
+    private volatile boolean paused = false;
+    private final Object signal = new Object();
+
+    public JitterBuffer(int capacity, PlaybackStats stats) {
+        this.capacity = capacity;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.stats = stats;
+        updateTarget();
+    }
+
+    // Nueva canción: vacía el buffer y olvida lo aprendido del enlace anterior
+    public void reset(PlaybackStats stats) {
+        this.stats = stats;
+        queue.clear();
+        lossRate = 0;
+        boostMs = 0;
+        bytesPerSecond = DEFAULT_BYTES_PER_SECOND;
+        endOfStream = false;
+        paused = false;
+        buffering = true;
+        updateTarget();
+        wake();
+    }
+
+    public void setBytesPerSecond(int bytesPerSecond) {
+        if (bytesPerSecond > 0) this.bytesPerSecond = bytesPerSecond;
+        updateTarget();
+    }
+
+    // Lado receptor: cada paquete de datos, indicando si llegó en orden
+    public void onArrival(boolean inOrder) {
+        lossRate += ((inOrder ? 0 : 1) - lossRate) / 64.0;
+        updateTarget();
+    }
+
+    public boolean offer(byte[] data) {
+        if (!queue.offer(data)) return false;
+        if (buffering) wake();
+        return true;
+    }
+
+    public boolean offer(byte[] data, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!queue.offer(data, timeout, unit)) return false;
+        if (buffering) wake();
+        return true;
+    }
+
+    // Pausa del usuario: poll() no entrega nada y, al reanudar, se rellena hasta el objetivo
+    // actual (sin el margen extra que se añade tras un corte)
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        if (!paused) buffering = true;
+        wake();
+    }
+
+    // Lado de audio: devuelve null mientras se está (re)llenando el buffer o si no llega nada
+    public byte[] poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (paused) {
+            awaitUntil(deadline, () -> !paused);
+            if (paused) return null;
+        }
+        if (buffering) {
+            awaitUntil(deadline, () -> queue.size() >= target || endOfStream || paused);
+            if (paused) return null;
+            if (queue.size() < target && !endOfStream) {
+                stats.onPoll(false, queue.size());
+                return null;
+            }
+            buffering = false;
+        }
+
+        byte[] data = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (data == null) {
+            if (!endOfStream && !paused) {
+                // Se secó: volver a llenar hasta un objetivo algo mayor
+                buffering = true;
+                boostMs = Math.min(MAX_TARGET_MS, boostMs + UNDERRUN_BOOST_MS);
+                updateTarget();
+            }
+        } else {
+            // El margen extra por cortes se olvida poco a poco mientras la reproducción va bien
+            boostMs *= 0.999;
+        }
+        stats.onPoll(data != null, queue.size());
+        return data;
+    }
+
+    private void awaitUntil(long deadline, java.util.function.BooleanSupplier ready) throws InterruptedException {
+        synchronized (signal) {
+            while (!ready.getAsBoolean()) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return;
+                TimeUnit.NANOSECONDS.timedWait(signal, left);
+            }
+        }
+    }
+
+    private void wake() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    // Consumidores sin reproducción (relays, pruebas de carga): sin objetivo ni telemetría, no bloquea
+    public byte[] pollNow() {
+        return queue.poll();
+    }
+
+    // Mediciones del traspaso entre hilos (StreamingBenchmark, bench/): objetivo fijo en paquetes,
+    // 1 = entregar en cuanto haya algo, sin re-buffering ni margen por cortes; 0 vuelve al adaptativo
+    void fixTarget(int packets) {
+        fixedTarget = packets;
+        updateTarget();
+    }
+
+    private void updateTarget() {
+        if (fixedTarget > 0) {
+            target = Math.min(capacity, fixedTarget);
+            return;
+        }
+        double packetMs = PACKET_BYTES * 1000.0 / bytesPerSecond;
+        double lossMs = Math.min(1.0, lossRate * 20) * LOSS_RECOVERY_MS;
+        double targetMs = 4 * stats.jitterMs() + lossMs + boostMs;
+        targetMs = Math.max(MIN_TARGET_MS, Math.min(MAX_TARGET_MS, targetMs));
+        target = Math.min(capacity, (int) Math.ceil(targetMs / packetMs));
+    }
+
+    // El receptor recibió END: lo que quede se reproduce aunque no llegue al objetivo
+    public void markEndOfStream() {
+        endOfStream = true;
+        wake();
+    }
+
+    // Tras un salto se descarta lo pendiente y se vuelve a llenar hasta el objetivo
+    public void clear() {
+        queue.clear();
+        buffering = true;
+        wake();
+    }
+
+    public boolean isReady() {
+        return queue.size() >= target || (endOfStream && !queue.isEmpty());
+    }
+
+    public byte[] peek() {
+        return queue.peek();
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public int remainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int target() {
+        return target;
+    }
+
+    public boolean isBuffering() {
+        return buffering;
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Generador de carga sin audio: simula N clientes concurrentes contra un MusicServer,
+// opcionalmente a través de un ImpairmentProxy en proceso. Todas las sesiones comparten un
+// ClientEngine (un solo socket) y consumen el audio como suscriptores Flow al ritmo de reproducción.
+// Imprime una línea JSON por cliente (--per-client) y una línea JSON agregada al final; con
+// --duration la prueba se corta a esa hora y las sesiones sin terminar cuentan como completed:false.
+public class LoadGenerator {
+    // Reproducción simulada a la tasa que anuncia el servidor en el META; si no la conoce,
+    // WAV PCM 44.1 kHz, 16 bits, estéreo
+    private static final int DEFAULT_BYTES_PER_SECOND = 176400;
+    private static final int PREBUFFER_PACKETS = 10;
+    // Paquetes que cada cliente simulado pide por adelantado a su sesión
+    private static final int PLAYOUT_WINDOW = 64;
+    private static final long TICK_MS = 10;
+
+    private final String host;
+    private final int port;
+    private final String song;
+    private final int clients;
+    private int idleMs = 3000;
+    private int bytesPerSecond = 0; // --rate fuerza una tasa fija
+    private int durationSeconds = 0; // --duration; 0 = hasta que terminen todos
+    private boolean perClient = false;
+
+    public LoadGenerator(String host, int port, String song, int clients) {
+        this.host = host;
+        this.port = port;
+        this.song = song;
+        this.clients = clients;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("USO: java LoadGenerator <HOST> <PUERTO> <CANCION> <CLIENTES>"
+                    + " [--loss P] [--dup P] [--reorder P] [--delay MS] [--jitter MS]"
+                    + " [--idle MS] [--rate BYTES_POR_SEG] [--duration SEG] [--per-client true]");
+            return;
+        }
+        LoadGenerator gen = new LoadGenerator(args[0], Integer.parseInt(args[1]), args[2], Integer.parseInt(args[3]));
+
+        ImpairmentProxy proxy = new ImpairmentProxy(0, gen.host, gen.port);
+        for (int i = 4; i + 1 < args.length; i += 2) {
+            String flag = args[i];
+            String value = args[i + 1];
+            if (proxy.configure(flag, value)) continue;
+            switch (flag) {
+                case "--idle": gen.idleMs = Integer.parseInt(value); break;
+                case "--rate": gen.bytesPerSecond = Integer.parseInt(value); break;
+                case "--duration": gen.durationSeconds = Integer.parseInt(value); break;
+                case "--per-client": gen.perClient = Boolean.parseBoolean(value); break;
+                default: System.out.println("Opción desconocida: " + flag);
+            }
+        }
+
+        try (ImpairmentProxy p = proxy) {
+            p.start();
+            System.out.println(gen.run("127.0.0.1", p.getPort(), p));
+        }
+    }
+
+    // Lanza todos los clientes contra host:port y devuelve el resumen agregado en JSON
+    public String run(String targetHost, int targetPort, ImpairmentProxy proxy) throws Exception {
+        InetSocketAddress server = new InetSocketAddress(targetHost, targetPort);
+        List<SimulatedClient> sims = new ArrayList<>();
+        ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "loadgen-clock");
+            t.setDaemon(true);
+            return t;
+        });
+        long start = System.nanoTime();
+        try (ClientEngine engine = new ClientEngine()) {
+            for (int i = 0; i < clients; i++) sims.add(new SimulatedClient(i, engine.play(song, server)));
+            clock.scheduleAtFixedRate(() -> {
+                long now = System.nanoTime();
+                for (SimulatedClient c : sims) c.tick(now);
+            }, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+            if (durationSeconds > 0) {
+                // En el mismo hilo que tick(): ningún cliente queda a medias entre ambos
+                clock.schedule(() -> {
+                    for (SimulatedClient c : sims) c.cut();
+                }, durationSeconds, TimeUnit.SECONDS);
+            }
+
+            List<ClientResult> results = new ArrayList<>();
+            for (SimulatedClient c : sims) {
+                ClientResult r = c.finished.get();
+                results.add(r);
+                if (perClient) System.out.println(r.toJson());
+            }
+            double wallSeconds = (System.nanoTime() - start) / 1e9;
+            return aggregate(results, wallSeconds, proxy);
+        } finally {
+            clock.shutdownNow();
+        }
+    }
+
+    private String aggregate(List<ClientResult> results, double wallSeconds, ImpairmentProxy proxy) {
+        long bytes = 0, received = 0, delivered = 0, stalls = 0, stallMs = 0;
+        int completed = 0;
+        List<Double> ttfb = new ArrayList<>();
+        for (ClientResult r : results) {
+            bytes += r.bytesDelivered;
+            received += r.dataPacketsReceived;
+            delivered += r.packetsDelivered;
+            stalls += r.stalls;
+            stallMs += r.stallNanos / 1_000_000;
+            if (r.completed) completed++;
+            if (r.ttfbNanos >= 0) ttfb.add(r.ttfbNanos / 1e6);
+        }
+        Collections.sort(ttfb);
+        double retransRatio = received == 0 ? 0 : (double) (received - delivered) / received;
+        return String.format(Locale.ROOT,
+                "{\"type\":\"summary\",\"clients\":%d,\"completed\":%d,\"wall_s\":%.3f,"
+                + "\"goodput_kbps\":%.1f,\"bytes_delivered\":%d,\"retransmission_ratio\":%.4f,"
+                + "\"ttfb_ms_p50\":%.1f,\"ttfb_ms_p95\":%.1f,\"ttfb_ms_max\":%.1f,"
+                + "\"stalls\":%d,\"stall_ms\":%d,\"proxy\":%s}",
+                results.size(), completed, wallSeconds,
+                wallSeconds == 0 ? 0 : bytes * 8 / 1000.0 / wallSeconds, bytes, retransRatio,
+                percentile(ttfb, 0.50), percentile(ttfb, 0.95), percentile(ttfb, 1.0),
+                stalls, stallMs, proxy == null ? "null" : proxy.statsJson());
+    }
+
+    private static double percentile(List<Double> sorted, double q) {
+        if (sorted.isEmpty()) return -1;
+        int idx = (int) Math.ceil(q * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(idx, sorted.size() - 1)));
+    }
+
+    static class ClientResult {
+        int id;
+        boolean completed;
+        long ttfbNanos = -1;
+        long bytesDelivered;
+        long packetsDelivered;
+        long dataPacketsReceived;
+        int stalls;
+        long stallNanos;
+        double seconds;
+
+        String toJson() {
+            double retrans = dataPacketsReceived == 0 ? 0
+                    : (double) (dataPacketsReceived - packetsDelivered) / dataPacketsReceived;
+            return String.format(Locale.ROOT,
+                    "{\"type\":\"client\",\"id\":%d,\"completed\":%b,\"seconds\":%.3f,\"goodput_kbps\":%.1f,"
+                    + "\"retransmission_ratio\":%.4f,\"ttfb_ms\":%.1f,\"stalls\":%d,\"stall_ms\":%d}",
+                    id, completed, seconds, seconds == 0 ? 0 : bytesDelivered * 8 / 1000.0 / seconds,
+                    retrans, ttfbNanos / 1e6, stalls, stallNanos / 1_000_000);
+        }
+    }
+
+    // Sesión del motor con un reloj de reproducción simulado en lugar de la línea de audio para
+    // poder contar cortes. Pide audio (Flow) a medida que lo "reproduce", así la ventana anunciada
+    // al servidor se comporta como la de un cliente real.
+    private class SimulatedClient implements Flow.Subscriber<byte[]> {
+        private final ClientResult result = new ClientResult();
+        private final CompletableFuture<ClientEngine.Session> opening;
+        final CompletableFuture<ClientResult> finished = new CompletableFuture<>();
+        private final long start = System.nanoTime();
+        private ClientEngine.Session session;
+        private Flow.Subscription subscription;
+
+        // Estado de la reproducción simulada
+        private long receivedBytes = 0;
+        private boolean playing = false;
+        private boolean stalled = false;
+        private double consumedBytes = 0;
+        private long requestedPackets = 0;
+        private long lastTick;
+        private long stallStart;
+
+        SimulatedClient(int id, CompletableFuture<ClientEngine.Session> opening) {
+            this.result.id = id;
+            this.opening = opening;
+            opening.thenAccept(s -> {
+                synchronized (this) {
+                    session = s;
+                }
+                s.subscribe(this);
+                s.done().thenAccept(state -> {
+                    if (state == ClientEngine.State.ENDED) finish(true);
+                });
+            });
+        }
+
+        @Override
+        public synchronized void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            requestedPackets = PLAYOUT_WINDOW;
+            subscription.request(PLAYOUT_WINDOW);
+        }
+
+        @Override
+        public synchronized void onNext(byte[] item) {
+            receivedBytes += item.length;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish(false);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        // Avanza el reloj de reproducción; un corte empieza cuando se consume todo lo entregado
+        // y termina cuando se vuelve a acumular el prebuffer.
+        synchronized void tick(long now) {
+            if (finished.isDone()) return;
+            ClientEngine.Session s = session;
+            // Hasta el META manda el motor, que reintenta PLAYID con espera creciente
+            if (opening.isCompletedExceptionally() || s != null && s.idleMillis() > idleMs) {
+                if (s != null) s.stop();
+                finish(false);
+                return;
+            }
+
+            long buffered = receivedBytes - (long) consumedBytes;
+            if (!playing) {
+                if (receivedBytes >= PREBUFFER_PACKETS * 1024L) {
+                    playing = true;
+                    lastTick = now;
+                }
+                return;
+            }
+            if (stalled) {
+                if (buffered >= PREBUFFER_PACKETS * 1024L) {
+                    stalled = false;
+                    result.stallNanos += now - stallStart;
+                    lastTick = now;
+                }
+                return;
+            }
+            consumedBytes += (now - lastTick) * rate(s) / 1e9;
+            lastTick = now;
+            if (consumedBytes >= receivedBytes) {
+                consumedBytes = receivedBytes;
+                stalled = true;
+                stallStart = now;
+                result.stalls++;
+            }
+            // Se vuelve a pedir lo ya reproducido para mantener PLAYOUT_WINDOW paquetes por delante
+            long played = (long) consumedBytes / 1024;
+            if (subscription != null && played + PLAYOUT_WINDOW > requestedPackets) {
+                subscription.request(played + PLAYOUT_WINDOW - requestedPackets);
+                requestedPackets = played + PLAYOUT_WINDOW;
+            }
+        }
+
+        // Fin de --duration: la sesión se para y lo recibido hasta ahora cuenta como resultado parcial
+        synchronized void cut() {
+            if (finished.isDone()) return;
+            if (session != null) session.stop();
+            finish(false);
+        }
+
+        private int rate(ClientEngine.Session s) {
+            if (bytesPerSecond > 0) return bytesPerSecond;
+            return s.bytesPerSecond() > 0 ? s.bytesPerSecond() : DEFAULT_BYTES_PER_SECOND;
+        }
+
+        private synchronized void finish(boolean completed) {
+            if (finished.isDone()) return;
+            long end = System.nanoTime();
+            if (stalled) result.stallNanos += end - stallStart;
+            result.completed = completed;
+            result.seconds = (end - start) / 1e9;
+            ClientEngine.Session s = session;
+            if (s != null) {
+                result.ttfbNanos = s.firstByteNanos();
+                result.dataPacketsReceived = s.packetsReceived();
+                result.packetsDelivered = s.packetsDelivered();
+                result.bytesDelivered = s.bytesDelivered();
+            }
+            finished.complete(result);
+        }
+    }
+}
@@ -1,46 +1,41 @@
-import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
 import javax.sound.sampled.*;
 
 public class MusicClient {
-    // Puertos de los 3 servidores 
+    // Puertos de los 3 servidores
     private static final int[] SERVER_PORTS = {9001, 9002, 9003};
     private static final String SERVER_HOST = "localhost";
-    
-    // Estados del reproductor
-    private DatagramSocket socket;
-    private InetAddress currentServerIP;
-    private int currentServerPort;
-    private volatile boolean isPlaying = false;
-    
-    // Audio Buffer
-    private BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>(50);
-    
+    // Directorio opcional (-Dspotify.directory=host:puerto): resuelve la canción en una sola petición
+    private static final String DIRECTORY = System.getProperty("spotify.directory");
+
+    // Red, receptor GBN y buffer de jitter viven en el motor; aquí solo consola y audio
+    private ClientEngine engine;
+    private volatile ClientEngine.Session session;
+
     public static void main(String[] args) {
         new MusicClient().start();
     }
 
     public void start() {
         Scanner scanner = new Scanner(System.in);
-        try {
-            socket = new DatagramSocket();
+        try (ClientEngine e = new ClientEngine()) {
+            engine = e;
             System.out.println("=== CLIENTE MINI SPOTIFY (UDP + GBN) ===");
-            
+
             while (true) {
                 System.out.print("\nIntroduce nombre de canción (.wav) o 'EXIT': ");
                 String input = scanner.nextLine();
-                
+
                 if (input.equalsIgnoreCase("EXIT")) break;
-                
-                // Buscar en los 3 servidores
-                int foundPort = searchSongInServers(input);
-                
-                if (foundPort != -1) {
-                    System.out.println("Canción encontrada en servidor puerto: " + foundPort);
-                    currentServerPort = foundPort; // El puerto del servidor principal, luego cambiará al puerto de streaming
-                    playSong(input, foundPort);
+
+                // Preguntar al directorio o, si no hay, buscar en los 3 servidores
+                List<InetSocketAddress> found = engine.find(input, DIRECTORY, servers()).get();
+
+                if (!found.isEmpty()) {
+                    System.out.println("Canción encontrada en servidor puerto: " + found.get(0).getPort());
+                    playSong(input, found);
                 } else {
                     System.out.println("Canción no encontrada en ningún servidor.");
                 }
@@ -50,187 +45,91 @@ public class MusicClient {
         }
     }
 
-    
-    private int searchSongInServers(String songName) {
-        for (int port : SERVER_PORTS) {
-            try {
-                // "Descomponer nombre en bits" (Bytes UTF-8)
-                String msg = "BUSCAR:" + songName;
-                byte[] data = msg.getBytes();
-                DatagramPacket packet = new DatagramPacket(data, data.length, InetAddress.getByName(SERVER_HOST), port);
-                socket.send(packet);
-                
-            
-                socket.setSoTimeout(500); 
-                byte[] buffer = new byte[256];
-                DatagramPacket response = new DatagramPacket(buffer, buffer.length);
-                
-                try {
-                    socket.receive(response);
-                    String res = new String(response.getData(), 0, response.getLength());
-                    if (res.startsWith("FOUND")) {
-                        return port;
-                    }
-                } catch (SocketTimeoutException e) {
-                    
-                }
-                
-            } catch (IOException e) {
-                System.out.println("Error contactando servidor " + port);
-            }
-        }
-        return -1;
+    private static List<InetSocketAddress> servers() {
+        List<InetSocketAddress> servers = new ArrayList<>();
+        for (int port : SERVER_PORTS) servers.add(new InetSocketAddress(SERVER_HOST, port));
+        return servers;
     }
 
-    private void playSong(String songName, int serverPort) {
+    // Si la primera réplica no responde, el motor abre la sesión en la siguiente
+    private void playSong(String songName, List<InetSocketAddress> replicas) {
+        ClientEngine.Session s;
         try {
-            // Reiniciar estado
-            socket.setSoTimeout(0); // Quitar timeout para el streaming
-            audioQueue.clear();
-            isPlaying = true;
-            
-            InetAddress ip = InetAddress.getByName(SERVER_HOST);
-
-            // Enviar solicitud de PLAY
-            String msg = "PLAY:" + songName;
-            byte[] data = msg.getBytes();
-            DatagramPacket packet = new DatagramPacket(data, data.length, ip, serverPort);
-            socket.send(packet);
-
-            // Iniciar Hilo de Interfaz de Control
-            new Thread(this::controlLoop).start();
-            
-            // Iniciar Hilo de Reproducción de Audio
-            Thread audioPlayerThread = new Thread(this::audioPlayerWorker);
-            audioPlayerThread.start();
-
-            // Lógica GBN Lado Receptor (Hilo actual)
-            receiverGBNLoop();
-
+            s = engine.play(songName, replicas).get();
         } catch (Exception e) {
-            e.printStackTrace();
+            System.out.println("El servidor no respondió: " + e.getMessage());
+            return;
         }
+        session = s;
+        PlaybackStats stats = s.stats();
+        stats.startLog(PlaybackStats.defaultLogFile(), 1000);
+        s.whenSuspended(() -> System.out.println("Sesión suspendida por el servidor. [R] para reanudar."));
+        s.done().thenAccept(state -> {
+            if (state == ClientEngine.State.ENDED) System.out.println("Fin de la canción.");
+            else if (state == ClientEngine.State.EXPIRED) System.out.println("La sesión expiró. Vuelve a buscar la canción.");
+        });
+
+        // Iniciar Hilo de Interfaz de Control
+        new Thread(this::controlLoop).start();
+
+        // Reproducción de Audio (hilo actual)
+        audioPlayerWorker(s);
+        if (!s.done().isDone()) s.stop(); // Sin línea de audio no tiene sentido seguir recibiendo
+
+        stats.stopLog();
+        System.out.println("QoS: cortes=" + stats.underruns() + " (" + stats.underrunMs() + " ms), jitter="
+                + String.format("%.1f", stats.jitterMs()) + " ms");
     }
 
-    // Receptor Go-Back-N
-    private void receiverGBNLoop() {
-        int expectedSeq = 0;
-        byte[] buffer = new byte[1028]; 
-
+    // Saca bytes del buffer de la sesión y los manda a los parlantes
+    private void audioPlayerWorker(ClientEngine.Session s) {
         try {
-            while (isPlaying) {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
-                
-                
-                if (currentServerPort != packet.getPort()) {
-                    currentServerPort = packet.getPort();
-                    currentServerIP = packet.getAddress();
-                }
-
-                
-                String strData = new String(packet.getData(), 0, packet.getLength());
-                if (strData.equals("END")) {
-                    System.out.println("Fin de la canción.");
-                    isPlaying = false;
-                    break;
-                }
-                
-                
-                int seqNum = ((buffer[0] & 0xFF) << 24) | 
-                             ((buffer[1] & 0xFF) << 16) | 
-                             ((buffer[2] & 0xFF) << 8)  | 
-                             (buffer[3] & 0xFF);
-
-                // Lógica GBN
-                if (seqNum == expectedSeq) {
-
-                    // Extraer audio
-                    byte[] audioData = new byte[packet.getLength() - 4];
-                    System.arraycopy(packet.getData(), 4, audioData, 0, audioData.length);
-                    
-                    
-                    audioQueue.offer(audioData);
-                    
-                    // Enviar ACK
-                    sendControlMessage("ACK:" + expectedSeq);
-                    expectedSeq++;
-                } else {
-                    // Paquete fuera de orden. Re-enviar ACK del último recibido correctamente
-                    // (O en GBN simple, simplemente ignorar y esperar timeout del sender, 
-                    // pero enviar ACK duplicado ayuda a acelerar recuperación)
-                    sendControlMessage("ACK:" + (expectedSeq - 1));
-                }
-            }
-        } catch (IOException e) {
-            if (isPlaying) e.printStackTrace();
-        }
-    }
+            // Formato estándar WAV
 
-    // Hilo que saca bytes de la cola y los manda a los parlantes
-    private void audioPlayerWorker() {
-        try {
-            // Formato estándar WAV 
-            
             AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
             DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
             SourceDataLine line = (SourceDataLine) AudioSystem.getLine(info);
-            
+
             line.open(format);
             line.start();
 
-            while (isPlaying || !audioQueue.isEmpty()) {
-                byte[] data = audioQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (data != null) {
-                    line.write(data, 0, data.length);
-                }
+            while (!s.done().isDone() || !s.buffer().isEmpty()) {
+                byte[] data = s.poll(100, TimeUnit.MILLISECONDS);
+                if (data != null) line.write(data, 0, data.length);
             }
             line.drain();
             line.close();
-            
+
         } catch (Exception e) {
             System.err.println("Error de audio (Probablemente formato WAV incompatible): " + e.getMessage());
         }
     }
 
-    
+
     private void controlLoop() {
         Scanner sc = new Scanner(System.in);
         System.out.println(">> Comandos: [P]ausa, [R]eanudar, [A]delantar, [S]ig. Canción");
-        
-        while (isPlaying) {
+        ClientEngine.Session s = session;
+
+        while (!s.done().isDone()) {
             String cmd = sc.nextLine().toUpperCase();
-            if (!isPlaying) break; 
+            if (s.done().isDone()) break;
 
             switch (cmd) {
                 case "P":
-                    sendControlMessage("PAUSE");
+                    s.pause();
                     break;
                 case "R":
-                    sendControlMessage("RESUME");
+                    s.resume();
                     break;
                 case "A":
-                    sendControlMessage("SKIP:FAST");
-                    // Limpiamos cola de audio local para que el salto se sienta inmediato
-                    audioQueue.clear(); 
+                    // El buffer local se vacía para que el salto se sienta inmediato
+                    s.skip(400);
                     break;
                 case "S":
-                    sendControlMessage("STOP");
-                    isPlaying = false; // Rompe el loop de recepción
+                    s.stop();
                     break;
             }
         }
     }
-
-    private void sendControlMessage(String msg) {
-        try {
-            if (currentServerIP != null) {
-                byte[] data = msg.getBytes();
-                DatagramPacket packet = new DatagramPacket(data, data.length, currentServerIP, currentServerPort);
-                socket.send(packet);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-}
\ No newline at end of file
+}
@@ -1,6 +1,8 @@
 import java.awt.*;
 import java.awt.event.*;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 import javax.sound.sampled.*;
 import javax.swing.*;
@@ -10,26 +12,29 @@ public class MusicClientGUI extends JFrame {
 
     private static final int[] SERVER_PORTS = {9001, 9002, 9003};
     private static final String SERVER_HOST = "127.0.0.1";
-    
-    private DatagramSocket socket;
-    private InetAddress currentServerIP;
-    private int currentServerPort; 
-    
-    private volatile boolean isPlaying = false;
+    // Directorio opcional (-Dspotify.directory=host:puerto): resuelve la canción en una sola petición
+    private static final String DIRECTORY = System.getProperty("spotify.directory");
+
+    // Red, receptor GBN y buffer de jitter viven en el motor; la GUI solo controla la sesión actual
+    private ClientEngine engine;
+    private volatile ClientEngine.Session session;
+
     private volatile boolean isPaused = false;
-    private volatile boolean isSkipping = false; 
-    
+
     // Control de slider
     private volatile boolean isDraggingSlider = false; // Para no actualizar mientras se mueve la bolita
 
-    private volatile int lastAckedSeq = -1;
-    private volatile int currentSeqNum = 0; 
-    private volatile int totalSeqNum = 0; // Total de paquetes de la canción
-    
-    private BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>(500);
-    private Thread receiverThread;
+    // Telemetría de reproducción de la canción actual
+    private volatile PlaybackStats stats = new PlaybackStats();
     private Thread playerThread;
 
+    // Reloj de la interfaz: el hilo de audio solo publica estado; este timer lo pinta a 30 fps
+    private static final int RENDER_FPS = 30;
+    private volatile PlaybackClock clock;
+    private volatile String audioStatus;
+    private String renderedAudioStatus;
+    private Timer renderTimer;
+
     // UI
     private JTextField txtSearch;
     private JLabel lblStatus, lblTime; 
@@ -41,6 +46,11 @@ public class MusicClientGUI extends JFrame {
     private JButton btnPlay, btnPause, btnSearch, btnRefresh;
     private JTextArea listArea;
 
+    // Panel opcional de estadísticas
+    private JPanel statsPanel;
+    private JLabel lblDepth, lblUnderruns, lblJitter, lblSeekRecovery;
+    private Timer statsTimer;
+
     public MusicClientGUI() {
         super("Mini Spotify - Seekable");
         initNetwork();
@@ -50,8 +60,7 @@ public class MusicClientGUI extends JFrame {
 
     private void initNetwork() {
         try {
-            socket = new DatagramSocket();
-            socket.setSoTimeout(2000);
+            engine = new ClientEngine();
         } catch (Exception e) { e.printStackTrace(); }
     }
 
@@ -104,7 +113,7 @@ public class MusicClientGUI extends JFrame {
             @Override
             public void mouseReleased(MouseEvent e) {
                 isDraggingSlider = false;
-                if (isPlaying) {
+                if (session != null && !session.done().isDone()) {
                     int val = seekSlider.getValue();
                     doSeek(val); 
                 }
@@ -133,9 +142,39 @@ public class MusicClientGUI extends JFrame {
         bottomPanel.add(btnPause);
         bottomPanel.add(btnPlay);
 
+        JCheckBox chkStats = new JCheckBox("Estadísticas");
+        bottomPanel.add(chkStats);
+
+        // --- ESTADÍSTICAS (oculto por defecto) ---
+        statsPanel = new JPanel(new GridLayout(4, 1, 2, 2));
+        statsPanel.setBorder(new EmptyBorder(10, 0, 10, 10));
+        lblDepth = new JLabel();
+        lblUnderruns = new JLabel();
+        lblJitter = new JLabel();
+        lblSeekRecovery = new JLabel();
+        statsPanel.add(lblDepth);
+        statsPanel.add(lblUnderruns);
+        statsPanel.add(lblJitter);
+        statsPanel.add(lblSeekRecovery);
+        statsPanel.setVisible(false);
+
+        statsTimer = new Timer(500, e -> refreshStatsPanel());
+        renderTimer = new Timer(1000 / RENDER_FPS, e -> renderPlayback());
+        chkStats.addActionListener(e -> {
+            statsPanel.setVisible(chkStats.isSelected());
+            if (chkStats.isSelected()) {
+                refreshStatsPanel();
+                statsTimer.start();
+            } else {
+                statsTimer.stop();
+            }
+            revalidate();
+        });
+
         add(topPanel, BorderLayout.NORTH);
         add(centerPanel, BorderLayout.CENTER);
         add(bottomPanel, BorderLayout.SOUTH);
+        add(statsPanel, BorderLayout.EAST);
 
         
         btnRefresh.addActionListener(e -> refreshServers());
@@ -144,7 +183,9 @@ public class MusicClientGUI extends JFrame {
         
 
         btnPause.addActionListener(e -> {
-            sendControlMessage("PAUSE");
+            ClientEngine.Session s = session;
+            if (s == null) return;
+            s.pause();
             isPaused = true;
             btnPause.setEnabled(false);
             btnPlay.setEnabled(true);
@@ -152,47 +193,98 @@ public class MusicClientGUI extends JFrame {
         });
 
         btnPlay.addActionListener(e -> {
+            ClientEngine.Session s = session;
+            if (s == null) return;
             isPaused = false;
-            for(int i=0; i<3; i++) sendControlMessage("RESUME");
-            if (lastAckedSeq != -1) sendControlMessage("ACK:" + lastAckedSeq);
+            s.resume();
             btnPause.setEnabled(true);
             btnPlay.setEnabled(false);
             lblStatus.setText("Reproduciendo...");
         });
     }
     
+    private void refreshStatsPanel() {
+        PlaybackStats s = stats;
+        lblDepth.setText("Buffer: " + s.depth() + " paq.");
+        lblUnderruns.setText("Cortes: " + s.underruns() + " (" + s.underrunMs() + " ms)");
+        lblJitter.setText(String.format("Jitter: %.1f ms", s.jitterMs()));
+        long seek = s.lastSeekRecoveryMs();
+        lblSeekRecovery.setText("Salto: " + (seek < 0 ? "-" : seek + " ms"));
+    }
+
+    // Tiempo y slider según lo que la línea de audio ya reprodujo, no lo que llegó por la red
+    private void renderPlayback() {
+        String status = audioStatus;
+        if (status != null && !status.equals(renderedAudioStatus)) {
+            renderedAudioStatus = status;
+            lblStatus.setText(status);
+        }
+        ClientEngine.Session s = session;
+        PlaybackClock c = clock;
+        if (s == null || c == null || c.session != s) return;
+
+        long songBytes = c.songBytes();
+        long currentSeconds = songBytes / c.bytesPerSecond;
+        long totalSeconds = s.total() * 1024L / c.bytesPerSecond;
+        if (totalSeconds == 0) totalSeconds = 1; // Evitar /0 visual
+        currentSeconds = Math.min(currentSeconds, totalSeconds);
+        String timeStr = String.format("%02d:%02d / %02d:%02d",
+                currentSeconds / 60, currentSeconds % 60,
+                totalSeconds / 60, totalSeconds % 60);
+        if (!timeStr.equals(lblTime.getText())) lblTime.setText(timeStr);
+
+        // Solo actualizamos el slider si el usuario NO lo está arrastrando ni esperando un salto
+        if (!isDraggingSlider && !s.isSeeking()) {
+            int packet = (int) Math.min(songBytes / 1024, s.total());
+            if (seekSlider.getValue() != packet) seekSlider.setValue(packet);
+        }
+    }
+
     // Método para saltar a posición específica (Usado por el slider)
     private void doSeek(int targetPacket) {
-        isSkipping = true; 
-        audioQueue.clear();
-        
-        sendControlMessage("SEEK:" + targetPacket);
+        ClientEngine.Session s = session;
+        if (s == null) return;
         lblStatus.setText("Buscando...");
-        
-        currentSeqNum = targetPacket; 
+        s.seek(targetPacket).thenRun(() -> SwingUtilities.invokeLater(() -> {
+            if (session == s && !s.done().isDone()) lblStatus.setText("Reproduciendo...");
+        }));
     }
 
     //LÓGICA DE RED
 
     private void refreshServers() {
         listArea.setText("Buscando servidores...\n");
-        new Thread(() -> {
-            StringBuilder sb = new StringBuilder();
-            for (int port : SERVER_PORTS) {
-                try {
-                    String msg = "LIST";
-                    byte[] data = msg.getBytes();
-                    DatagramPacket p = new DatagramPacket(data, data.length, InetAddress.getByName(SERVER_HOST), port);
-                    socket.send(p);
-                    byte[] buff = new byte[2048];
-                    DatagramPacket res = new DatagramPacket(buff, buff.length);
-                    socket.receive(res);
-                    String text = new String(res.getData(), 0, res.getLength());
-                    if (text.startsWith("LIST_RES:")) sb.append("Puerto ").append(port).append(": ").append(text.substring(9)).append("\n");
-                } catch (Exception e) { sb.append("Puerto ").append(port).append(": Sin respuesta\n"); }
-            }
+        if (DIRECTORY != null) {
+            // Un solo LIST al directorio con el catálogo de todos los servidores registrados
+            engine.request(ClientEngine.address(DIRECTORY), "LIST", 2000).thenAccept(text -> {
+                if (text != null && text.startsWith("LIST_RES:")) {
+                    SwingUtilities.invokeLater(() -> listArea.setText("Directorio: " + text.substring(9) + "\n"));
+                } else {
+                    listServers("Directorio sin respuesta\n");
+                }
+            });
+        } else {
+            listServers("");
+        }
+    }
+
+    // LIST a los 3 servidores a la vez
+    private void listServers(String prefix) {
+        String[] lines = new String[SERVER_PORTS.length];
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[SERVER_PORTS.length];
+        for (int i = 0; i < SERVER_PORTS.length; i++) {
+            int idx = i;
+            int port = SERVER_PORTS[i];
+            replies[i] = engine.request(new InetSocketAddress(SERVER_HOST, port), "LIST", 2000).thenAccept(text ->
+                    lines[idx] = text != null && text.startsWith("LIST_RES:")
+                            ? "Puerto " + port + ": " + text.substring(9) + "\n"
+                            : "Puerto " + port + ": Sin respuesta\n");
+        }
+        CompletableFuture.allOf(replies).thenRun(() -> {
+            StringBuilder sb = new StringBuilder(prefix);
+            for (String line : lines) sb.append(line);
             SwingUtilities.invokeLater(() -> listArea.setText(sb.toString()));
-        }).start();
+        });
     }
 
     private void startSearch() {
@@ -200,154 +292,80 @@ public class MusicClientGUI extends JFrame {
         if (song.isEmpty()) return;
         lblStatus.setText("Buscando...");
         btnSearch.setEnabled(false);
-        new Thread(() -> {
-            int port = -1;
-            for (int p : SERVER_PORTS) {
-                try {
-                    String msg = "BUSCAR:" + song;
-                    byte[] data = msg.getBytes();
-                    DatagramPacket pack = new DatagramPacket(data, data.length, InetAddress.getByName(SERVER_HOST), p);
-                    socket.send(pack);
-                    byte[] buff = new byte[256];
-                    DatagramPacket res = new DatagramPacket(buff, buff.length);
-                    socket.receive(res);
-                    if (new String(res.getData(), 0, res.getLength()).startsWith("FOUND")) { port = p; break; }
-                } catch (Exception e) {}
+        List<InetSocketAddress> servers = new ArrayList<>();
+        for (int port : SERVER_PORTS) servers.add(new InetSocketAddress(SERVER_HOST, port));
+        engine.find(song, DIRECTORY, servers).thenAccept(replicas -> SwingUtilities.invokeLater(() -> {
+            if (!replicas.isEmpty()) startStreaming(song, replicas);
+            else {
+                lblStatus.setText("No encontrada.");
+                JOptionPane.showMessageDialog(this, "Canción no encontrada.");
+                btnSearch.setEnabled(true);
             }
-            int finalPort = port;
-            SwingUtilities.invokeLater(() -> {
-                if (finalPort != -1) startStreaming(song, finalPort);
-                else {
-                    lblStatus.setText("No encontrada.");
-                    JOptionPane.showMessageDialog(this, "Canción no encontrada.");
-                    btnSearch.setEnabled(true);
-                }
-            });
-        }).start();
+        }));
     }
 
-    private void startStreaming(String song, int port) {
-        isPlaying = false;
+    private void startStreaming(String song, List<InetSocketAddress> replicas) {
+        ClientEngine.Session previous = session;
+        if (previous != null) previous.stop();
+        session = null;
+        clock = null;
         isPaused = false;
-        isSkipping = false;
-        audioQueue.clear();
         seekSlider.setValue(0);
         lblTime.setText("00:00 / 00:00");
-        lastAckedSeq = -1;
-        currentSeqNum = 0; 
-        totalSeqNum = 0; // Resetear total
-        
-        try { Thread.sleep(200); } catch(Exception e){}
-        currentServerPort = port;
-        isPlaying = true;
-        
-        btnPause.setEnabled(true);
-        btnPlay.setEnabled(false);
-        seekSlider.setEnabled(true); // Habilitar slider
         lblStatus.setText("Conectando...");
 
-        try {
-            currentServerIP = InetAddress.getByName(SERVER_HOST);
-            socket.setSoTimeout(0); 
-            String msg = "PLAY:" + song;
-            byte[] data = msg.getBytes();
-            DatagramPacket p = new DatagramPacket(data, data.length, currentServerIP, port);
-            socket.send(p);
-            receiverThread = new Thread(this::receiverLoop);
-            playerThread = new Thread(this::audioPlayerWorker);
-            receiverThread.start();
-            playerThread.start();
-        } catch (Exception e) { e.printStackTrace(); }
+        engine.play(song, replicas).whenComplete((s, err) -> SwingUtilities.invokeLater(() -> {
+            if (err != null) {
+                renderTimer.stop();
+                lblStatus.setText("El servidor no respondió.");
+                btnSearch.setEnabled(true);
+                return;
+            }
+            onSessionOpened(s);
+        }));
     }
 
-    private void receiverLoop() {
-        int expectedSeq = 0;
-        byte[] buffer = new byte[1028];
-        int packetsSinceSkip = 0;
-
-        while (isPlaying) {
-            try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
-                
-                if (isPaused) {
-                    continue;
-                }
-
-                if (packet.getPort() != currentServerPort) currentServerPort = packet.getPort();
-                
-                String strData = new String(packet.getData(), 0, packet.getLength());
-                
-                // Manejo de la metadata (duración total)
-                if (strData.startsWith("META:")) {
-                    totalSeqNum = Integer.parseInt(strData.split(":")[1]);
-                    SwingUtilities.invokeLater(() -> seekSlider.setMaximum(totalSeqNum));
-                    continue;
-                }
-                
-                if (strData.startsWith("LIST") || strData.startsWith("FOUND")) continue;
-                if (strData.equals("END")) {
-                    isPlaying = false;
-                    SwingUtilities.invokeLater(() -> {
-                        lblStatus.setText("Fin.");
-                        btnPause.setEnabled(false);
-                        btnSearch.setEnabled(true);
-                        seekSlider.setValue(seekSlider.getMaximum());
-                        seekSlider.setEnabled(false);
-                    });
-                    break;
-                }
-
-                if (packet.getLength() > 4) {
-                    int seqNum = ((buffer[0] & 0xFF) << 24) | ((buffer[1] & 0xFF) << 16) | 
-                                 ((buffer[2] & 0xFF) << 8)  | (buffer[3] & 0xFF);
-
-                    if (isSkipping) {
-                        boolean jumpDetected = Math.abs(seqNum - expectedSeq) > 10;
-                        if (jumpDetected) {
-                            expectedSeq = seqNum; 
-                            isSkipping = false;
-                            packetsSinceSkip = 0;
-                            SwingUtilities.invokeLater(() -> lblStatus.setText("Reproduciendo..."));
-                        } else {
-                            packetsSinceSkip++;
-                            if (packetsSinceSkip > 20) {
-                                isSkipping = false;
-                                packetsSinceSkip = 0;
-                                expectedSeq = seqNum; 
-                                SwingUtilities.invokeLater(() -> lblStatus.setText("Sincronizado (Timeout)"));
-                            } else {
-                                continue;
-                            }
-                        }
-                    }
-
-                    if (seqNum == expectedSeq) {
-                        byte[] audio = new byte[packet.getLength() - 4];
-                        System.arraycopy(packet.getData(), 4, audio, 0, audio.length);
-                        
-                        audioQueue.offer(audio, 1, TimeUnit.SECONDS);
-                        sendControlMessage("ACK:" + seqNum);
-                        
-                        lastAckedSeq = seqNum;
-                        currentSeqNum = seqNum;
-                        expectedSeq++;
-                    } else {
-                        sendControlMessage("ACK:" + (expectedSeq - 1));
-                    }
-                }
-            } catch (Exception e) { if(isPlaying) e.printStackTrace(); }
-        }
+    private void onSessionOpened(ClientEngine.Session s) {
+        session = s;
+        stats = s.stats();
+        stats.startLog(PlaybackStats.defaultLogFile(), 1000);
+        seekSlider.setMaximum(s.total());
+        btnPause.setEnabled(true);
+        btnPlay.setEnabled(false);
+        seekSlider.setEnabled(true); // Habilitar slider
+        renderTimer.start();
+        // Sesión suspendida por el servidor (pausa larga o sin noticias): se retoma con Reanudar
+        s.whenSuspended(() -> SwingUtilities.invokeLater(() -> {
+            if (session != s || s.done().isDone()) return;
+            isPaused = true;
+            lblStatus.setText("Sesión suspendida. Pulsa Reanudar.");
+            btnPause.setEnabled(false);
+            btnPlay.setEnabled(true);
+        }));
+        s.done().thenAccept(state -> SwingUtilities.invokeLater(() -> {
+            if (session != s) return;
+            // Con END aún queda audio en el buffer: "Fin." lo pone el hilo de audio al terminar
+            if (state == ClientEngine.State.EXPIRED) {
+                lblStatus.setText("Sesión expirada.");
+                btnPlay.setEnabled(false);
+            }
+            btnPause.setEnabled(false);
+            btnSearch.setEnabled(true);
+            seekSlider.setEnabled(false);
+        }));
+        playerThread = new Thread(() -> audioPlayerWorker(s));
+        playerThread.start();
     }
 
-    private void audioPlayerWorker() {
+    // Sin trabajo de interfaz: el estado se publica en campos volátiles que lee renderPlayback()
+    private void audioPlayerWorker(ClientEngine.Session s) {
         SourceDataLine line = null;
         try {
-            SwingUtilities.invokeLater(() -> lblStatus.setText("Buffering..."));
-            while (audioQueue.size() < 10 && isPlaying) { Thread.sleep(50); }
-            if (audioQueue.isEmpty()) return;
+            audioStatus = "Buffering...";
+            while (!s.buffer().isReady() && !s.done().isDone()) { Thread.sleep(50); }
+            if (s.buffer().isEmpty()) return;
 
-            byte[] header = audioQueue.peek();
+            byte[] header = s.buffer().peek();
             int channels = (header[22] & 0xFF) | ((header[23] & 0xFF) << 8);
             int rate = (header[24] & 0xFF) | ((header[25] & 0xFF) << 8) | 
                        ((header[26] & 0xFF) << 16) | ((header[27] & 0xFF) << 24);
@@ -357,62 +375,94 @@ public class MusicClientGUI extends JFrame {
             if (rate < 4000 || rate > 192000) rate = 44100;
             if (bits != 8 && bits != 16) bits = 16;
             
-            final int finalRate = rate;
             AudioFormat format = new AudioFormat(rate, bits, channels, true, false);
             DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
             line = (SourceDataLine) AudioSystem.getLine(info);
             line.open(format);
             line.start();
             
-            SwingUtilities.invokeLater(() -> lblStatus.setText("Reproduciendo (" + finalRate + "Hz)"));
+            audioStatus = "Reproduciendo (" + rate + "Hz)";
 
             long bytesPerSecond = (long)(rate * channels * (bits / 8.0));
-            if (bytesPerSecond == 0) bytesPerSecond = 176400; 
+            if (bytesPerSecond == 0) bytesPerSecond = s.bytesPerSecond() > 0 ? s.bytesPerSecond() : 176400;
+            s.buffer().setBytesPerSecond((int) bytesPerSecond);
+            PlaybackClock c = new PlaybackClock(s, line, format.getFrameSize(), bytesPerSecond);
+            if (session == s) clock = c;
             
-            while (isPlaying) {
+            while (!s.done().isDone() || !s.buffer().isEmpty()) {
                 if (isPaused) { Thread.sleep(100); continue; }
-                byte[] data = audioQueue.poll(50, TimeUnit.MILLISECONDS);
+                byte[] data = s.poll(50, TimeUnit.MILLISECONDS);
                 if (data != null) {
+                    c.onWrite(s.lastPolledPacket(), data.length);
                     line.write(data, 0, data.length);
-                    
-                    if (!isSkipping) {
-                        long estimatedBytes = currentSeqNum * 1024L;
-                        long currentSeconds = estimatedBytes / bytesPerSecond;
-                        
-                        // Cálculo de tiempo total
-                        long totalBytes = totalSeqNum * 1024L;
-                        long totalSeconds = totalBytes / bytesPerSecond;
-                        if (totalSeconds == 0) totalSeconds = 1; // Evitar /0 visual
-
-                        String timeStr = String.format("%02d:%02d / %02d:%02d", 
-                                currentSeconds / 60, currentSeconds % 60,
-                                totalSeconds / 60, totalSeconds % 60);
-
-                        SwingUtilities.invokeLater(() -> {
-                            lblTime.setText(timeStr);
-                            // Solo actualizamos el slider si el usuario NO lo está arrastrando
-                            if (!isDraggingSlider) {
-                                seekSlider.setValue(currentSeqNum);
-                            }
-                        });
-                    }
                 }
             }
             line.drain();
+            if (session == s && s.done().getNow(null) == ClientEngine.State.ENDED) audioStatus = "Fin.";
         } catch (Exception e) {
-            SwingUtilities.invokeLater(() -> lblStatus.setText("Error Audio: " + e.getMessage()));
+            audioStatus = "Error Audio: " + e.getMessage();
         } finally {
             if (line != null) line.close();
-            try { socket.setSoTimeout(2000); } catch(Exception e){}
+            s.stats().stopLog();
+            // Un último repintado para el estado final y el timer se para hasta la próxima sesión
+            // (si ya empezó otra, el timer es suyo)
+            SwingUtilities.invokeLater(() -> {
+                if (session != s) return;
+                renderPlayback();
+                renderTimer.stop();
+            });
         }
     }
 
-    private void sendControlMessage(String msg) {
-        try {
-            byte[] data = msg.getBytes();
-            DatagramPacket p = new DatagramPacket(data, data.length, currentServerIP, currentServerPort);
-            socket.send(p);
-        } catch (Exception e) {}
+    // Posición real de reproducción: frames que la línea ya sacó por los parlantes
+    // (getLongFramePosition) traducidos a bytes de la canción. Cada salto abre un tramo que empieza
+    // en el frame donde se escribió su primer bloque; hasta que la línea llega ahí sigue sonando
+    // lo que quedaba del tramo anterior en el buffer de la línea.
+    private static class PlaybackClock {
+        final ClientEngine.Session session;
+        final SourceDataLine line;
+        final int frameSize;
+        final long bytesPerSecond;
+        // Solo los toca el hilo de audio
+        private long framesWritten;
+        private int nextPacket = -1;
+        private volatile Segment current;
+
+        PlaybackClock(ClientEngine.Session session, SourceDataLine line, int frameSize, long bytesPerSecond) {
+            this.session = session;
+            this.line = line;
+            this.frameSize = Math.max(1, frameSize);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        private static class Segment {
+            final long startFrame;
+            final long songByte;
+            volatile Segment previous;
+
+            Segment(long startFrame, long songByte, Segment previous) {
+                this.startFrame = startFrame;
+                this.songByte = songByte;
+                this.previous = previous;
+            }
+        }
+
+        // Hilo de audio, antes de cada write
+        void onWrite(int packet, int bytes) {
+            if (packet != nextPacket) current = new Segment(framesWritten, packet * 1024L, current);
+            nextPacket = packet + 1;
+            framesWritten += bytes / frameSize;
+        }
+
+        // Hilo de la interfaz
+        long songBytes() {
+            Segment seg = current;
+            if (seg == null) return 0;
+            long played = line.getLongFramePosition();
+            if (played >= seg.startFrame) seg.previous = null; // El tramo anterior ya no suena
+            while (played < seg.startFrame && seg.previous != null) seg = seg.previous;
+            return seg.songByte + Math.max(0, played - seg.startFrame) * frameSize;
+        }
     }
 
     public static void main(String[] args) {
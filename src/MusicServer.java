@@ -1,15 +1,52 @@
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class MusicServer {
     private int port;
     private String musicFolder;
     private static final int DATA_SIZE = 1024;
     private static final int WINDOW_SIZE = 5;
+    // Marcas de tiempo de envío por número de secuencia (mayor que cualquier salto de ACK aceptado)
+    private static final int RTT_RING = 256;
+    // Registro en el directorio: cada cuánto y tamaño máximo de cada trozo del catálogo
+    private static final int DIRECTORY_REFRESH_SECONDS = 10;
+    private static final int REGISTER_CHUNK_BYTES = 1200;
+
+    final ServerMetrics metrics;
+    // Canciones y sus metadatos; instantánea binaria para arrancar sin abrir cada archivo
+    final Catalog catalog;
+    // Reparte el ancho de banda de subida entre todas las sesiones (DRR)
+    final SendScheduler scheduler;
+    // El peso lo decide el servidor: por IP de cliente (-Dspotify.session.weights=IP:PESO,...) o
+    // el peso por defecto. Con PRIORITY un cliente solo puede bajarlo o volver al asignado.
+    private final int defaultWeight = Integer.getInteger("spotify.session.weight", 1);
+    private final Map<String, Integer> clientWeights = parseWeights(System.getProperty("spotify.session.weights", ""));
+
+    // Ciclo de vida: una pausa larga o un cliente que no responde liberan el hilo de la sesión
+    final SessionRegistry sessions;
+    private final long pauseSuspendMillis = Long.getLong("spotify.session.pause.ms", 15_000);
+    private final long idleSuspendMillis = Long.getLong("spotify.session.idle.ms", 10_000);
+
+    // PLAYID atendidos por cliente e id: un reintento del cliente (META perdido o lento) reenvía
+    // el META de la sesión ya abierta en lugar de abrir otra
+    private final Map<String, PlayRequest> playRequests = new ConcurrentHashMap<>();
+    private static final long PLAYID_MEMORY_MS = 30_000;
 
     public MusicServer(int port, String folderPath) {
         this.port = port;
         this.musicFolder = folderPath;
+        this.metrics = new ServerMetrics(port);
+        this.catalog = new Catalog(new File(folderPath),
+                new File(System.getProperty("spotify.catalog.file", new File(folderPath, ".catalog.bin").getPath())),
+                metrics);
+        this.scheduler = new SendScheduler(Long.getLong("spotify.egress.kbps", 0) * 1000 / 8, metrics);
+        this.sessions = new SessionRegistry(metrics, Long.getLong("spotify.session.ttl.ms", 600_000));
     }
 
     public void start() {
@@ -20,10 +57,23 @@ public class MusicServer {
             return;
         } else {
             System.out.println("Carpeta OK: " + folder.getName());
-            File[] files = folder.listFiles();
-            if (files != null) {
-                for (File f : files) if (f.isFile()) System.out.println("  - " + f.getName());
-            }
+            long t0 = System.nanoTime();
+            int rescanned = catalog.refresh();
+            System.out.println("Catálogo: " + catalog.size() + " canciones (" + rescanned + " re-escaneadas) en "
+                    + (System.nanoTime() - t0) / 1_000_000 + " ms");
+            Runtime.getRuntime().addShutdownHook(new Thread(catalog::writeSnapshot, "catalog-snapshot"));
+        }
+
+        scheduler.start();
+        sessions.start();
+        String directory = System.getProperty("spotify.directory");
+        if (directory != null) startDirectoryRegistration(directory);
+        // Volcado periódico de métricas solo si se pide: con -Dspotify.stats.file y/o -Dspotify.stats.interval
+        String statsFile = System.getProperty("spotify.stats.file");
+        Integer statsInterval = Integer.getInteger("spotify.stats.interval");
+        if (statsFile != null || statsInterval != null) {
+            metrics.startPeriodicDump(new File(statsFile != null ? statsFile : "stats-" + port + ".jsonl"),
+                    statsInterval != null ? statsInterval : 10);
         }
 
         try (DatagramSocket socket = new DatagramSocket(port)) {
@@ -38,7 +88,7 @@ public class MusicServer {
         }
     }
 
-    private void handleRequest(DatagramSocket serverSocket, DatagramPacket requestPacket) {
+    void handleRequest(DatagramSocket serverSocket, DatagramPacket requestPacket) {
         try {
             String message = new String(requestPacket.getData(), 0, requestPacket.getLength()).trim();
             String[] parts = message.split(":", 2);
@@ -48,12 +98,8 @@ public class MusicServer {
             int clientPort = requestPacket.getPort();
 
             if (command.equals("LIST")) {
-                File folder = new File(musicFolder);
                 StringBuilder sb = new StringBuilder("LIST_RES:");
-                File[] files = folder.listFiles((d, name) -> name.toLowerCase().endsWith(".wav"));
-                if (files != null) {
-                    for (File f : files) sb.append(f.getName()).append(",");
-                }
+                for (String name : catalog.names()) sb.append(name).append(",");
                 sendResponse(serverSocket, sb.toString(), clientIP, clientPort);
             } 
             else if (command.equals("BUSCAR")) {
@@ -66,10 +112,104 @@ public class MusicServer {
             else if (command.equals("PLAY")) {
                 String songName = parts.length > 1 ? parts[1].trim() : "";
                 System.out.println("Reproduciendo: " + songName + " para cliente " + clientPort);
-                startStreamingGBN(songName, clientIP, clientPort);
+                startStreamingGBN(songName, null, clientIP, clientPort);
+            }
+            else if (command.equals("PLAYID")) {
+                // PLAYID:<id>:<cancion>: el id vuelve en el META para que un cliente con varias
+                // sesiones en el mismo socket sepa a cuál pertenece cada socket de streaming
+                String[] req = parts.length > 1 ? parts[1].split(":", 2) : new String[0];
+                if (req.length == 2) {
+                    String key = clientIP.getHostAddress() + ":" + clientPort + ":" + req[0].trim();
+                    PlayRequest request = new PlayRequest(req[0].trim());
+                    PlayRequest existing = playRequests.putIfAbsent(key, request);
+                    if (existing != null) {
+                        existing.resendMeta();
+                        return;
+                    }
+                    try {
+                        System.out.println("Reproduciendo: " + req[1].trim() + " para cliente " + clientPort + " (id " + request.id + ")");
+                        startStreamingGBN(req[1].trim(), request, clientIP, clientPort);
+                    } finally {
+                        // Se recuerda un rato más por si llega un reintento tardío
+                        CompletableFuture.delayedExecutor(PLAYID_MEMORY_MS, TimeUnit.MILLISECONDS)
+                                .execute(() -> playRequests.remove(key, request));
+                    }
+                }
+            }
+            else if (command.equals("RESUME_SESSION")) {
+                // Retomar una sesión suspendida sin pasar por PLAY
+                String token = parts.length > 1 ? parts[1].trim() : "";
+                SessionRegistry.Suspended s = sessions.resume(token);
+                if (s != null) {
+                    System.out.println("Retomando sesión " + token + " (" + s.song + ") en " + s.base);
+                    streamSession(s.file, s.song, clientIP, clientPort, s.token, null, s.base, s.weight);
+                } else if (!sessions.isLive(token)) {
+                    sendResponse(serverSocket, "EXPIRED:" + token, clientIP, clientPort);
+                }
+            }
+            else if (command.equals("STATS")) {
+                // STATS: globales. STATS:SESIONES[:<desde>]: una página de la lista de sesiones
+                // (con cientos de sesiones la lista entera no cabe en un datagrama).
+                // Solo desde la propia máquina: la lista lleva IP:puerto y canción de cada oyente.
+                // Al resto no se le responde, como a un BUSCAR sin resultado.
+                if (!requestPacket.getAddress().isLoopbackAddress()) return;
+                String[] sub = parts.length > 1 ? parts[1].trim().split(":") : new String[0];
+                if (sub.length > 0 && sub[0].equals("SESIONES")) {
+                    int from = sub.length > 1 ? Integer.parseInt(sub[1]) : 0;
+                    sendResponse(serverSocket, "STATS_RES:" + metrics.sessionsJson(from, ServerMetrics.SESSIONS_PAGE),
+                            clientIP, clientPort);
+                } else {
+                    sendResponse(serverSocket, "STATS_RES:" + metrics.toJson(false), clientIP, clientPort);
+                }
             }
 
-        } catch (Exception e) { e.printStackTrace(); }
+        } catch (Exception e) { metrics.errors.increment(); e.printStackTrace(); }
+    }
+
+    // Envía el catálogo al directorio periódicamente; también sirve de latido.
+    // Cada ronda usa una época nueva para que el directorio olvide canciones borradas, y cada trozo
+    // lleva su índice y el total para que el directorio sepa cuándo tiene la ronda completa.
+    private void startDirectoryRegistration(String directory) {
+        try {
+            String[] hostPort = directory.split(":");
+            InetAddress dirIP = InetAddress.getByName(hostPort[0]);
+            int dirPort = Integer.parseInt(hostPort[1]);
+            DatagramSocket regSocket = new DatagramSocket();
+            ScheduledExecutorService registrar = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "directory-register-" + port);
+                t.setDaemon(true);
+                return t;
+            });
+            registrar.scheduleAtFixedRate(() -> {
+                try {
+                    List<String> chunks = new ArrayList<>();
+                    StringBuilder chunk = new StringBuilder();
+                    for (String name : catalog.names()) {
+                        if (chunk.length() > 0 && chunk.length() + name.length() > REGISTER_CHUNK_BYTES) {
+                            chunks.add(chunk.toString());
+                            chunk.setLength(0);
+                        }
+                        chunk.append(name).append(",");
+                    }
+                    chunks.add(chunk.toString());
+                    String prefix = "REGISTER:" + port + ":" + System.currentTimeMillis() + ":";
+                    for (int i = 0; i < chunks.size(); i++) {
+                        sendRegister(regSocket, prefix + i + ":" + chunks.size() + ":" + chunks.get(i), dirIP, dirPort);
+                    }
+                } catch (IOException e) {
+                    metrics.errors.increment();
+                    System.err.println("No se pudo registrar en el directorio: " + e.getMessage());
+                }
+            }, 0, DIRECTORY_REFRESH_SECONDS, TimeUnit.SECONDS);
+            System.out.println("Registrando catálogo en el directorio " + directory);
+        } catch (Exception e) {
+            System.err.println("Directorio inválido (" + directory + "): " + e.getMessage());
+        }
+    }
+
+    private void sendRegister(DatagramSocket socket, String msg, InetAddress ip, int port) throws IOException {
+        byte[] data = msg.getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(data, data.length, ip, port));
     }
 
     private void sendResponse(DatagramSocket socket, String msg, InetAddress ip, int port) throws IOException {
@@ -77,47 +217,163 @@ public class MusicServer {
         socket.send(new DatagramPacket(data, data.length, ip, port));
     }
 
-    private File findFileRobust(String name) {
-        File folder = new File(musicFolder);
-        File[] files = folder.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.getName().equalsIgnoreCase(name)) return file;
-            }
+    File findFileRobust(String name) {
+        File file = catalog.find(name);
+        if (file != null) {
+            metrics.catalogHits.increment();
+        } else {
+            metrics.catalogMisses.increment();
         }
-        return null;
+        return file;
     }
 
-    private void startStreamingGBN(String filename, InetAddress clientIP, int clientPort) {
+    private void startStreamingGBN(String filename, PlayRequest request, InetAddress clientIP, int clientPort) {
         File file = findFileRobust(filename);
         if (file == null) return;
+        streamSession(file, filename, clientIP, clientPort, sessions.newToken(), request, 0, weightFor(clientIP));
+    }
+
+    int weightFor(InetAddress clientIP) {
+        return clientWeights.getOrDefault(clientIP.getHostAddress(), defaultWeight);
+    }
 
+    // IP:PESO,IP:PESO (la IP puede ser IPv6, así que se corta por el último ':')
+    static Map<String, Integer> parseWeights(String spec) {
+        Map<String, Integer> weights = new ConcurrentHashMap<>();
+        for (String item : spec.split(",")) {
+            int colon = item.lastIndexOf(':');
+            if (colon <= 0) continue;
+            try {
+                weights.put(InetAddress.getByName(item.substring(0, colon).trim()).getHostAddress(),
+                        Integer.parseInt(item.substring(colon + 1).trim()));
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Peso de sesión inválido, se ignora: " + item);
+            }
+        }
+        return weights;
+    }
+
+    // Un PLAYID en curso: el META enviado y el socket de la sesión desde el que reenviarlo
+    static class PlayRequest {
+        final String id;
+        private volatile DatagramSocket socket;
+        private volatile DatagramPacket meta;
+
+        PlayRequest(String id) {
+            this.id = id;
+        }
+
+        void bind(DatagramSocket socket, DatagramPacket meta) {
+            this.meta = meta;
+            this.socket = socket;
+        }
+
+        // Si la sesión aún no mandó su META lo hará ella; si ya terminó, el socket está cerrado
+        void resendMeta() {
+            DatagramSocket s = socket;
+            if (s == null || s.isClosed()) return;
+            try {
+                s.send(meta);
+            } catch (IOException e) {
+                // La sesión acaba de terminar
+            }
+        }
+    }
+
+    // Sesión GBN desde startSeq. Termina con END, o suspendida (SUSPENDED:<token>) si se queda
+    // en pausa o sin noticias del cliente; en ese caso se puede retomar con RESUME_SESSION.
+    private void streamSession(File file, String filename, InetAddress clientIP, int clientPort,
+                               String token, PlayRequest request, int startSeq, int weight) {
+        ServerMetrics.SessionStats stats = null;
+        SendScheduler.Flow flow = null;
+        SessionRegistry.Live live = null;
+        boolean suspended = false;
+        // Una sesión retomada conserva su peso salvo que la política lo haya bajado desde entonces
+        int maxWeight = weightFor(clientIP);
+        weight = Math.min(weight, maxWeight);
         try (DatagramSocket streamSocket = new DatagramSocket()) {
             streamSocket.setSoTimeout(100); 
             
             byte[] fileBytes = java.nio.file.Files.readAllBytes(file.toPath());
             int totalPackets = (int) Math.ceil((double) fileBytes.length / DATA_SIZE);
+            stats = metrics.openSession(clientIP, clientPort, filename, totalPackets);
+            flow = scheduler.register(streamSocket, weight);
+            stats.weight = flow.weight();
+            live = sessions.register(token);
             
-            // 1. Enviar Metadata (Total de paquetes para la barra de progreso)
-            String metaMsg = "META:" + totalPackets;
-            streamSocket.send(new DatagramPacket(metaMsg.getBytes(), metaMsg.length(), clientIP, clientPort));
+            // 1. Enviar Metadata (Total de paquetes para la barra de progreso, token de sesión y,
+            // si fue un PLAYID, su id y los bytes por segundo del WAV según el catálogo)
+            String metaMsg = "META:" + totalPackets + ":" + token;
+            if (request != null) {
+                Catalog.Entry entry = catalog.entry(file.getName());
+                metaMsg += ":" + request.id + ":" + (entry != null ? entry.bytesPerSecond() : 0);
+            }
+            DatagramPacket metaPacket = new DatagramPacket(metaMsg.getBytes(), metaMsg.length(), clientIP, clientPort);
+            streamSocket.send(metaPacket);
+            if (request != null) request.bind(streamSocket, metaPacket);
             Thread.sleep(50); 
 
-            int base = 0; 
-            int nextSeqNum = 0;
+            int base = Math.max(0, Math.min(startSeq, totalPackets - 1)); 
+            int nextSeqNum = base;
             boolean paused = false; 
             boolean finished = false;
             long lastCommandTime = 0;
+            long lastHeard = System.currentTimeMillis();
+            long pausedSince = 0;
+
+            // Para RTT (algoritmo de Karn: no se mide con paquetes retransmitidos)
+            // El planificador anota cuándo sale cada paquete; 0 = aún en cola
+            AtomicLongArray sentAt = new AtomicLongArray(RTT_RING);
+            boolean[] retransmitted = new boolean[RTT_RING];
+            int highestSent = base - 1;
+
+            // Ventana anunciada por el receptor (espacio libre en su buffer). Hasta el primer ACK
+            // no se conoce, así que se usa la ventana propia.
+            int rwnd = WINDOW_SIZE;
+            boolean probe = false;
 
             while (base < totalPackets && !finished) {
-                // Enviar ventana
-                while (nextSeqNum < base + WINDOW_SIZE && nextSeqNum < totalPackets) {
+                // Enviar ventana: nunca más de lo que el cliente puede guardar
+                int window = Math.min(WINDOW_SIZE, rwnd);
+                if (probe) window = Math.max(window, 1); // Sonda de ventana cero: un solo paquete
+                probe = false;
+                while (nextSeqNum < base + window && nextSeqNum < totalPackets) {
                     if (paused) break; // Si está en pausa, deja de enviar y escucha comandos
 
                     byte[] packetData = createPacket(nextSeqNum, fileBytes);
-                    streamSocket.send(new DatagramPacket(packetData, packetData.length, clientIP, clientPort));
+                    int slot = nextSeqNum % RTT_RING;
+                    sentAt.set(slot, 0);
+                    flow.send(new DatagramPacket(packetData, packetData.length, clientIP, clientPort), sentAt, slot);
+
+                    retransmitted[slot] = nextSeqNum <= highestSent;
+                    if (retransmitted[slot]) {
+                        metrics.retransmissions.increment();
+                        stats.retransmissions++;
+                    } else {
+                        highestSent = nextSeqNum;
+                    }
+                    metrics.packetsSent.increment();
+                    metrics.bytesSent.add(packetData.length);
+                    stats.packetsSent++;
                     nextSeqNum++;
                 }
+                if (!paused) metrics.windowOccupancy.record(nextSeqNum - base);
+                stats.base = base;
+                stats.paused = paused;
+                stats.rwnd = rwnd;
+
+                // RESUME_SESSION llegó por el puerto principal mientras la sesión seguía viva
+                if (live.resumeRequested) {
+                    live.resumeRequested = false;
+                    paused = false;
+                    streamSocket.setSoTimeout(100);
+                }
+                long now = System.currentTimeMillis();
+                // Un cliente en pausa no manda nada: ahí solo cuenta el límite de pausa
+                if (paused ? now - pausedSince > pauseSuspendMillis : now - lastHeard > idleSuspendMillis) {
+                    suspended = true;
+                    break;
+                }
 
                 // Escuchar ACKs o Comandos
                 try {
@@ -125,19 +381,36 @@ public class MusicServer {
                     DatagramPacket ackP = new DatagramPacket(ackBuff, ackBuff.length);
                     streamSocket.receive(ackP);
                     String msg = new String(ackP.getData(), 0, ackP.getLength());
+                    lastHeard = System.currentTimeMillis();
                     
                     if (msg.startsWith("ACK:")) {
-                        int ack = Integer.parseInt(msg.split(":")[1]);
+                        // ACK:<seq>[:<rwnd>] (los clientes antiguos no anuncian ventana)
+                        String[] ackParts = msg.split(":");
+                        int ack = Integer.parseInt(ackParts[1]);
+                        int previousRwnd = rwnd;
+                        rwnd = ackParts.length > 2 ? Math.max(0, Integer.parseInt(ackParts[2])) : WINDOW_SIZE;
                         // Validación para evitar saltos locos al rebobinar
                         if (ack >= base && ack < base + 200) {
+                            int slot = ack % RTT_RING;
+                            long sent = sentAt.get(slot);
+                            if (ack <= highestSent && !retransmitted[slot] && sent != 0) {
+                                metrics.rttMicros.record((System.nanoTime() - sent) / 1000);
+                            }
                             base = ack + 1;
+                        } else if (ack == base - 1 && rwnd <= previousRwnd) {
+                            // Un ACK repetido que solo abre la ventana no es un duplicado
+                            metrics.duplicateAcks.increment();
+                            stats.duplicateAcks++;
                         }
                     }
                     else if (msg.equals("PAUSE")) {
+                        if (!paused) pausedSince = lastHeard;
                         paused = true;
+                        streamSocket.setSoTimeout(500); // En pausa no hace falta despertar tan seguido
                     }
                     else if (msg.equals("RESUME")) {
                         paused = false;
+                        streamSocket.setSoTimeout(100);
                     }
                     else if (msg.startsWith("SEEK:")) {
                         // Salto directo desde la barra de progreso
@@ -146,6 +419,8 @@ public class MusicServer {
                         if (targetSeq >= totalPackets) targetSeq = totalPackets - 1;
                         base = targetSeq;
                         nextSeqNum = base;
+                        flow.purge();
+                        highestSent = base - 1; // Tras un salto no son retransmisiones
                         System.out.println("Seek to: " + base);
                     }
                     else if (msg.startsWith("SKIP:")) { 
@@ -153,6 +428,8 @@ public class MusicServer {
                             base += 400; 
                             if (base >= totalPackets) base = totalPackets - 1;
                             nextSeqNum = base; 
+                            flow.purge();
+                            highestSent = base - 1;
                             lastCommandTime = System.currentTimeMillis();
                         }
                     }
@@ -161,39 +438,86 @@ public class MusicServer {
                             base -= 400; 
                             if (base < 0) base = 0; 
                             nextSeqNum = base;
+                            flow.purge();
+                            highestSent = base - 1;
                             lastCommandTime = System.currentTimeMillis();
                         }
                     }
+                    else if (msg.startsWith("PRIORITY:")) {
+                        // Peso de la sesión en el planificador (1 = normal); nunca por encima del asignado
+                        flow.setWeight(Math.min(maxWeight, Integer.parseInt(msg.split(":")[1].trim())));
+                        stats.weight = flow.weight();
+                    }
                     else if (msg.equals("STOP")) {
                         finished = true;
                     }
                     
                 } catch (SocketTimeoutException e) {
+                    if (nextSeqNum > base) {
+                        metrics.timeouts.increment();
+                        stats.timeouts++;
+                    } else if (rwnd == 0 && !paused) {
+                        // Si se perdió la actualización de ventana, la sonda la recupera
+                        probe = true;
+                        metrics.zeroWindowProbes.increment();
+                    }
                     nextSeqNum = base;
+                    flow.purge(); // Lo que siga en cola se va a reenviar de todos modos
                 }
             }
             
-            streamSocket.send(new DatagramPacket("END".getBytes(), 3, clientIP, clientPort));
-            System.out.println("Fin de canción para " + clientPort);
+            if (suspended) {
+                // Se libera todo salvo la posición; fileBytes muere con este hilo
+                sessions.suspend(live, file, filename, base, flow.weight());
+                String msg = "SUSPENDED:" + token;
+                streamSocket.send(new DatagramPacket(msg.getBytes(), msg.length(), clientIP, clientPort));
+                System.out.println("Sesión suspendida para " + clientPort + " en " + base);
+            } else {
+                streamSocket.send(new DatagramPacket("END".getBytes(), 3, clientIP, clientPort));
+                System.out.println("Fin de canción para " + clientPort);
+            }
 
-        } catch (Exception e) { e.printStackTrace(); }
+        } catch (Exception e) {
+            metrics.errors.increment();
+            e.printStackTrace();
+        } finally {
+            if (flow != null) flow.close();
+            if (stats != null) metrics.closeSession(stats);
+            if (live != null && !suspended) sessions.unregister(live);
+        }
     }
 
-    private byte[] createPacket(int seqNum, byte[] fileData) {
+    byte[] createPacket(int seqNum, byte[] fileData) {
         int start = seqNum * DATA_SIZE;
         int length = Math.min(DATA_SIZE, fileData.length - start);
         byte[] packet = new byte[4 + length];
+        encodeSeqNum(seqNum, packet);
+        System.arraycopy(fileData, start, packet, 4, length);
+        return packet;
+    }
+
+    // Cabecera de 4 bytes big-endian con el número de secuencia
+    static void encodeSeqNum(int seqNum, byte[] packet) {
         packet[0] = (byte) (seqNum >> 24); 
         packet[1] = (byte) (seqNum >> 16);
         packet[2] = (byte) (seqNum >> 8); 
         packet[3] = (byte) (seqNum);
-        System.arraycopy(fileData, start, packet, 4, length);
-        return packet;
+    }
+
+    static int decodeSeqNum(byte[] packet) {
+        return ((packet[0] & 0xFF) << 24) | 
+               ((packet[1] & 0xFF) << 16) | 
+               ((packet[2] & 0xFF) << 8)  | 
+               (packet[3] & 0xFF);
     }
 
     public static void main(String[] args) {
         if (args.length < 2) {
-            System.out.println("USO: java MusicServer <PUERTO> <RUTA>");
+            System.out.println("USO: java [-Dspotify.directory=HOST:PUERTO]"
+                    + " [-Dspotify.stats.interval=SEG] [-Dspotify.stats.file=RUTA]"
+                    + " [-Dspotify.egress.kbps=KBPS] [-Dspotify.session.weight=PESO] [-Dspotify.session.weights=IP:PESO,...]"
+                    + " [-Dspotify.session.pause.ms=MS] [-Dspotify.session.idle.ms=MS] [-Dspotify.session.ttl.ms=MS]"
+                    + " [-Dspotify.catalog.file=RUTA] MusicServer <PUERTO> <RUTA>");
             return;
         }
         new MusicServer(Integer.parseInt(args[0]), args[1]).start();
@@ -0,0 +1,171 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Telemetría de calidad de reproducción en el cliente: profundidad del buffer de jitter,
+// cortes (underruns), jitter de llegada entre paquetes y tiempo de recuperación tras un salto.
+// El receptor llama a onPacket(), el hilo de audio a onPoll(); la lectura es para la GUI y el log.
+public class PlaybackStats {
+    // Tamaño a partir del cual se rota el log de QoS
+    private static final long LOG_MAX_BYTES = Long.getLong("spotify.qos.log.max.kb", 1024) * 1024;
+
+    private final long startNanos = System.nanoTime();
+
+    // Llegadas (hilo receptor)
+    private volatile long lastArrival = -1;
+    private volatile long lastInterarrival = -1;
+    private volatile double jitterNanos;
+    private volatile double meanInterarrivalNanos;
+    private volatile long packets;
+
+    // Reproducción (hilo de audio)
+    private volatile int depth;
+    private volatile boolean started;
+    private volatile boolean paused;
+    private volatile long underrunStart = -1;
+    private volatile long underruns;
+    private volatile long underrunNanos;
+    private volatile long seekStart = -1;
+    private volatile long lastSeekRecoveryMs = -1;
+
+    final Histogram depthHistogram = new Histogram(4096);
+    final Histogram seekRecoveryMs = new Histogram(60_000);
+
+    private ScheduledExecutorService logger;
+    private File logFile;
+
+    // Jitter entre llegadas al estilo RFC 3550: media móvil de |D(i) - D(i-1)| con ganancia 1/16
+    public void onPacket() {
+        long now = System.nanoTime();
+        if (lastArrival >= 0) {
+            long d = now - lastArrival;
+            if (lastInterarrival >= 0) {
+                jitterNanos += (Math.abs(d - lastInterarrival) - jitterNanos) / 16.0;
+            }
+            meanInterarrivalNanos = meanInterarrivalNanos == 0 ? d : meanInterarrivalNanos + (d - meanInterarrivalNanos) / 16.0;
+            lastInterarrival = d;
+        }
+        lastArrival = now;
+        packets++;
+    }
+
+    // Resultado de cada intento de sacar audio del buffer
+    public void onPoll(boolean gotData, int queueDepth) {
+        depth = queueDepth;
+        depthHistogram.record(queueDepth);
+        long now = System.nanoTime();
+        if (gotData) {
+            started = true;
+            if (underrunStart >= 0) {
+                underrunNanos += now - underrunStart;
+                underrunStart = -1;
+            }
+            if (seekStart >= 0) {
+                lastSeekRecoveryMs = (now - seekStart) / 1_000_000;
+                seekRecoveryMs.record(lastSeekRecoveryMs);
+                seekStart = -1;
+            }
+        } else if (started && !paused && seekStart < 0 && underrunStart < 0) {
+            // Los huecos por pausa o por salto no son cortes
+            underrunStart = now;
+            underruns++;
+        }
+    }
+
+    public void onSeek() {
+        seekStart = System.nanoTime();
+        closeUnderrun();
+        resetArrivals();
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        if (paused) closeUnderrun();
+        resetArrivals();
+    }
+
+    private void closeUnderrun() {
+        long u = underrunStart;
+        if (u >= 0) {
+            underrunNanos += System.nanoTime() - u;
+            underrunStart = -1;
+        }
+    }
+
+    // Tras una pausa o un salto el primer intervalo no dice nada sobre la red
+    private void resetArrivals() {
+        lastArrival = -1;
+        lastInterarrival = -1;
+    }
+
+    public int depth() { return depth; }
+    public long underruns() { return underruns; }
+    public long packets() { return packets; }
+    public double jitterMs() { return jitterNanos / 1e6; }
+    public double meanInterarrivalMs() { return meanInterarrivalNanos / 1e6; }
+    public long lastSeekRecoveryMs() { return lastSeekRecoveryMs; }
+
+    public long underrunMs() {
+        long total = underrunNanos;
+        long u = underrunStart;
+        if (u >= 0) total += System.nanoTime() - u;
+        return total / 1_000_000;
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"ts\":%d,\"t_ms\":%d,\"depth\":%d,\"depth_p50\":%d,\"depth_p01\":%d,\"packets\":%d,"
+                + "\"underruns\":%d,\"underrun_ms\":%d,\"jitter_ms\":%.2f,\"interarrival_ms\":%.2f,"
+                + "\"seek_recovery_ms\":%d,\"seek_recovery\":%s}",
+                System.currentTimeMillis(), (System.nanoTime() - startNanos) / 1_000_000,
+                depth, depthHistogram.percentile(0.50), depthHistogram.percentile(0.01), packets,
+                underruns, underrunMs(), jitterMs(), meanInterarrivalMs(),
+                lastSeekRecoveryMs, seekRecoveryMs.toJson());
+    }
+
+    // Escribe una línea JSON por intervalo en el archivo de log (fuera del hilo de audio); sin
+    // archivo no hace nada
+    public synchronized void startLog(File file, int intervalMs) {
+        if (file == null || logger != null) return;
+        this.logFile = file;
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "qos-log");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.scheduleAtFixedRate(this::writeLine, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeLine() {
+        rotateIfFull();
+        try (PrintWriter pw = new PrintWriter(new FileWriter(logFile, true))) {
+            pw.println(toJson());
+        } catch (IOException e) {
+            System.err.println("No se pudo escribir el log de QoS: " + e.getMessage());
+        }
+    }
+
+    public synchronized void stopLog() {
+        if (logger == null) return;
+        logger.shutdownNow();
+        writeLine();
+        logger = null;
+    }
+
+    // Al pasar de spotify.qos.log.max.kb el log actual pasa a <log>.1 (sustituyendo al anterior),
+    // así que en disco nunca hay más del doble de ese tamaño
+    private void rotateIfFull() {
+        if (logFile.length() < LOG_MAX_BYTES) return;
+        File old = new File(logFile.getPath() + ".1");
+        if ((old.exists() && !old.delete()) || !logFile.renameTo(old)) {
+            System.err.println("No se pudo rotar el log de QoS " + logFile);
+        }
+    }
+
+    // client-qos.log en el directorio de trabajo; otra ruta con -Dspotify.qos.log=RUTA y sin log
+    // con -Dspotify.qos.log= (vacío)
+    static File defaultLogFile() {
+        String path = System.getProperty("spotify.qos.log", "client-qos.log");
+        return path.isEmpty() ? null : new File(path);
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Planificador central de envíos del servidor: Deficit Round Robin entre las sesiones activas,
+// con peso (prioridad) por sesión y un presupuesto total de salida opcional (token bucket).
+// Los hilos de sesión solo encolan; un único hilo envía, así un cliente en un enlace rápido
+// no acapara el ancho de banda de subida del servidor.
+public class SendScheduler {
+    // Un paquete de datos completo (cabecera + DATA_SIZE)
+    private static final int QUANTUM = 1028;
+    static final int MAX_WEIGHT = 16;
+
+    private final LinkedBlockingQueue<Flow> active = new LinkedBlockingQueue<>();
+    private final ServerMetrics metrics;
+    private volatile long egressBytesPerSecond;
+    private Thread worker;
+
+    // Token bucket (solo lo usa el hilo del planificador)
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public SendScheduler(long egressBytesPerSecond, ServerMetrics metrics) {
+        this.egressBytesPerSecond = egressBytesPerSecond;
+        this.metrics = metrics;
+    }
+
+    public synchronized void start() {
+        if (worker != null) return;
+        worker = new Thread(this::run, "send-scheduler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public Flow register(DatagramSocket socket, int weight) {
+        return new Flow(socket, weight);
+    }
+
+    // Cola de envíos de una sesión
+    public class Flow {
+        private final DatagramSocket socket;
+        private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile int weight;
+        private volatile boolean closed;
+        private long deficit;
+
+        Flow(DatagramSocket socket, int weight) {
+            this.socket = socket;
+            setWeight(weight);
+        }
+
+        public void send(DatagramPacket packet) {
+            send(packet, null, 0);
+        }
+
+        // Anota en sentAt[slot] el instante en que el paquete sale de verdad, para que el RTT no
+        // incluya la espera en la cola del planificador
+        public void send(DatagramPacket packet, AtomicLongArray sentAt, int slot) {
+            if (closed) return;
+            queue.add(new Pending(packet, System.nanoTime(), sentAt, slot));
+            activate();
+        }
+
+        public void setWeight(int weight) {
+            this.weight = Math.max(1, Math.min(MAX_WEIGHT, weight));
+        }
+
+        public int weight() {
+            return weight;
+        }
+
+        // Descarta lo que aún no salió (p. ej. tras un timeout o un salto, ya no sirve)
+        public void purge() {
+            queue.clear();
+        }
+
+        public void close() {
+            closed = true;
+            queue.clear();
+        }
+
+        private void activate() {
+            if (scheduled.compareAndSet(false, true)) active.add(this);
+        }
+    }
+
+    private static class Pending {
+        final DatagramPacket packet;
+        final long enqueuedAt;
+        final AtomicLongArray sentAt;
+        final int slot;
+
+        Pending(DatagramPacket packet, long enqueuedAt, AtomicLongArray sentAt, int slot) {
+            this.packet = packet;
+            this.enqueuedAt = enqueuedAt;
+            this.sentAt = sentAt;
+            this.slot = slot;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Flow flow;
+            try {
+                flow = active.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            flow.deficit += (long) QUANTUM * flow.weight;
+            Pending p;
+            while (!flow.closed && (p = flow.queue.peek()) != null && p.packet.getLength() <= flow.deficit) {
+                flow.queue.poll();
+                flow.deficit -= p.packet.getLength();
+                acquire(p.packet.getLength());
+                try {
+                    flow.socket.send(p.packet);
+                    long now = System.nanoTime();
+                    if (p.sentAt != null) p.sentAt.set(p.slot, now);
+                    metrics.queueDelayMicros.record((now - p.enqueuedAt) / 1000);
+                } catch (IOException e) {
+                    // Socket de la sesión cerrado: la sesión terminó
+                    flow.close();
+                }
+            }
+
+            if (!flow.closed && !flow.queue.isEmpty()) {
+                active.add(flow);
+            } else {
+                flow.deficit = 0;
+                flow.scheduled.set(false);
+                // Un envío pudo llegar entre el último peek y el set(false)
+                if (!flow.closed && !flow.queue.isEmpty()) flow.activate();
+            }
+        }
+    }
+
+    // Espera hasta tener bytes disponibles en el presupuesto de salida
+    private void acquire(int bytes) {
+        long rate = egressBytesPerSecond;
+        if (rate <= 0) return;
+        while (true) {
+            long now = System.nanoTime();
+            // Ráfaga máxima de 100 ms (y al menos un par de paquetes para presupuestos muy bajos)
+            double burst = Math.max(rate / 10.0, 2.0 * QUANTUM);
+            tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+            lastRefill = now;
+            if (tokens >= bytes) {
+                tokens -= bytes;
+                return;
+            }
+            long waitNanos = (long) ((bytes - tokens) * 1e9 / rate);
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, 50_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public void setEgressBytesPerSecond(long egressBytesPerSecond) {
+        this.egressBytesPerSecond = egressBytesPerSecond;
+    }
+}
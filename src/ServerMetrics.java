@@ -0,0 +1,168 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Métricas del servidor: contadores globales sin locks, histogramas y estadísticas por sesión.
+// Se consultan con el comando UDP "STATS" (solo globales, cabe en un datagrama) y la lista de
+// sesiones por páginas con "STATS:SESIONES:<desde>", solo desde 127.0.0.1; el volcado periódico JSON lleva todo.
+public class ServerMetrics {
+    // Sesiones por página de STATS:SESIONES (~160 bytes cada una)
+    static final int SESSIONS_PAGE = 100;
+
+    private final int port;
+    private final long startMillis = System.currentTimeMillis();
+
+    final AtomicInteger activeSessions = new AtomicInteger();
+    final LongAdder sessionsStarted = new LongAdder();
+    // Ciclo de vida (SessionRegistry): suspendidas ahora, y totales de recuperadas/retomadas/caducadas
+    final AtomicInteger suspendedSessions = new AtomicInteger();
+    final LongAdder sessionsReclaimed = new LongAdder();
+    final LongAdder sessionsResumed = new LongAdder();
+    final LongAdder sessionsExpired = new LongAdder();
+    final LongAdder packetsSent = new LongAdder();
+    final LongAdder bytesSent = new LongAdder();
+    final LongAdder retransmissions = new LongAdder();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder duplicateAcks = new LongAdder();
+    final LongAdder zeroWindowProbes = new LongAdder();
+    final LongAdder catalogHits = new LongAdder();
+    final LongAdder catalogMisses = new LongAdder();
+    final AtomicInteger catalogEntries = new AtomicInteger();
+    final LongAdder catalogRescans = new LongAdder(); // archivos re-leídos por cambio de tamaño/mtime
+    final LongAdder errors = new LongAdder();
+
+    // RTT en microsegundos (hasta ~17 min) y paquetes en vuelo por envío de ventana
+    final Histogram rttMicros = new Histogram(1L << 30);
+    final Histogram windowOccupancy = new Histogram(1024);
+    // Espera de cada paquete en el planificador de envíos
+    final Histogram queueDelayMicros = new Histogram(1L << 30);
+
+    private final Map<Integer, SessionStats> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSessionId = new AtomicInteger();
+    private ScheduledExecutorService dumper;
+
+    public ServerMetrics(int port) {
+        this.port = port;
+    }
+
+    // Contadores de una sesión. Solo los escribe el hilo de la sesión; los lee STATS.
+    static class SessionStats {
+        final int id;
+        final String client;
+        final String song;
+        final int totalPackets;
+        final long startMillis = System.currentTimeMillis();
+        volatile int base;
+        volatile boolean paused;
+        volatile int rwnd;
+        volatile int weight;
+        volatile long packetsSent;
+        volatile long retransmissions;
+        volatile long timeouts;
+        volatile long duplicateAcks;
+
+        SessionStats(int id, String client, String song, int totalPackets) {
+            this.id = id;
+            this.client = client;
+            this.song = song;
+            this.totalPackets = totalPackets;
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"id\":%d,\"client\":\"%s\",\"song\":\"%s\",\"base\":%d,\"total\":%d,\"paused\":%b,\"rwnd\":%d,\"weight\":%d,"
+                    + "\"age_ms\":%d,\"packets_sent\":%d,\"retransmissions\":%d,\"timeouts\":%d,\"dup_acks\":%d}",
+                    id, escape(client), escape(song), base, totalPackets, paused, rwnd, weight,
+                    System.currentTimeMillis() - startMillis, packetsSent, retransmissions, timeouts, duplicateAcks);
+        }
+    }
+
+    SessionStats openSession(InetAddress ip, int clientPort, String song, int totalPackets) {
+        SessionStats s = new SessionStats(nextSessionId.incrementAndGet(),
+                ip.getHostAddress() + ":" + clientPort, song, totalPackets);
+        sessions.put(s.id, s);
+        sessionsStarted.increment();
+        activeSessions.incrementAndGet();
+        return s;
+    }
+
+    void closeSession(SessionStats s) {
+        if (sessions.remove(s.id) != null) activeSessions.decrementAndGet();
+    }
+
+    public String toJson(boolean withSessions) {
+        long lookups = catalogHits.sum() + catalogMisses.sum();
+        StringBuilder sb = new StringBuilder(512);
+        sb.append(String.format(Locale.ROOT,
+                "{\"ts\":%d,\"port\":%d,\"uptime_ms\":%d,\"active_sessions\":%d,\"sessions_started\":%d,"
+                + "\"suspended_sessions\":%d,\"sessions_reclaimed\":%d,\"sessions_resumed\":%d,\"sessions_expired\":%d,"
+                + "\"packets_sent\":%d,\"bytes_sent\":%d,\"retransmissions\":%d,\"timeouts\":%d,"
+                + "\"dup_acks\":%d,\"zero_window_probes\":%d,\"catalog_hits\":%d,\"catalog_misses\":%d,"
+                + "\"catalog_hit_rate\":%.3f,\"catalog_entries\":%d,\"catalog_rescans\":%d,\"errors\":%d,",
+                System.currentTimeMillis(), port, System.currentTimeMillis() - startMillis,
+                activeSessions.get(), sessionsStarted.sum(),
+                suspendedSessions.get(), sessionsReclaimed.sum(), sessionsResumed.sum(), sessionsExpired.sum(),
+                packetsSent.sum(), bytesSent.sum(),
+                retransmissions.sum(), timeouts.sum(), duplicateAcks.sum(), zeroWindowProbes.sum(),
+                catalogHits.sum(), catalogMisses.sum(),
+                lookups == 0 ? 0.0 : (double) catalogHits.sum() / lookups, catalogEntries.get(), catalogRescans.sum(),
+                errors.sum()));
+        sb.append("\"rtt_us\":").append(rttMicros.toJson());
+        sb.append(",\"window\":").append(windowOccupancy.toJson());
+        sb.append(",\"queue_delay_us\":").append(queueDelayMicros.toJson());
+        if (withSessions) {
+            sb.append(",\"sessions\":[");
+            boolean first = true;
+            for (SessionStats s : sessions.values()) {
+                if (!first) sb.append(',');
+                sb.append(s.toJson());
+                first = false;
+            }
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+
+    // Sesiones activas con id >= fromId, ordenadas por id. "next" es el id con el que pedir la
+    // página siguiente, o -1 si no hay más.
+    public String sessionsJson(int fromId, int limit) {
+        List<SessionStats> page = new ArrayList<>();
+        for (SessionStats s : sessions.values()) {
+            if (s.id >= fromId) page.add(s);
+        }
+        page.sort(Comparator.comparingInt(s -> s.id));
+        StringBuilder sb = new StringBuilder(256 + 160 * Math.min(limit, page.size()));
+        sb.append("{\"sessions\":[");
+        int n = Math.min(limit, page.size());
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(page.get(i).toJson());
+        }
+        sb.append("],\"next\":").append(page.size() > n ? page.get(n).id : -1);
+        return sb.append('}').toString();
+    }
+
+    // Vuelca una línea JSON cada intervalo; 0 segundos lo desactiva
+    void startPeriodicDump(File out, int intervalSeconds) {
+        if (intervalSeconds <= 0) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stats-dump-" + port);
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            try (PrintWriter pw = new PrintWriter(new FileWriter(out, true))) {
+                pw.println(toJson(true));
+            } catch (IOException e) {
+                errors.increment();
+                System.err.println("No se pudieron volcar las métricas: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Ciclo de vida de las sesiones de streaming del servidor.
+// Cada sesión tiene un token. Una sesión en pausa demasiado tiempo, o cuyo cliente dejó de
+// responder, se suspende: su hilo, su socket y la copia del archivo en memoria se liberan y
+// aquí solo queda la posición. Con RESUME_SESSION:<token> el cliente la retoma sin un PLAY nuevo.
+// Las sesiones suspendidas que nadie retoma caducan.
+public class SessionRegistry {
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Live> live = new ConcurrentHashMap<>();
+    private final Map<String, Suspended> suspended = new ConcurrentHashMap<>();
+    private final ServerMetrics metrics;
+    private final long ttlMillis;
+    private ScheduledExecutorService sweeper;
+
+    public SessionRegistry(ServerMetrics metrics, long ttlMillis) {
+        this.metrics = metrics;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Sesión con hilo propio; el hilo de la sesión consulta resumeRequested en su bucle
+    static class Live {
+        final String token;
+        volatile boolean resumeRequested;
+
+        Live(String token) {
+            this.token = token;
+        }
+    }
+
+    // Lo mínimo para retomar: sin buffers ni sockets
+    static class Suspended {
+        final String token;
+        final File file;
+        final String song;
+        final int base;
+        final int weight;
+        final long suspendedAt = System.currentTimeMillis();
+
+        Suspended(String token, File file, String song, int base, int weight) {
+            this.token = token;
+            this.file = file;
+            this.song = song;
+            this.base = base;
+            this.weight = weight;
+        }
+    }
+
+    public synchronized void start() {
+        if (sweeper != null) return;
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, ttlMillis / 10);
+        sweeper.scheduleAtFixedRate(this::expire, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public String newToken() {
+        byte[] b = new byte[8];
+        random.nextBytes(b);
+        StringBuilder sb = new StringBuilder(16);
+        for (byte x : b) sb.append(String.format("%02x", x));
+        return sb.toString();
+    }
+
+    Live register(String token) {
+        Live l = new Live(token);
+        live.put(token, l);
+        return l;
+    }
+
+    void unregister(Live l) {
+        live.remove(l.token);
+    }
+
+    void suspend(Live l, File file, String song, int base, int weight) {
+        live.remove(l.token);
+        suspended.put(l.token, new Suspended(l.token, file, song, base, weight));
+        metrics.suspendedSessions.incrementAndGet();
+        metrics.sessionsReclaimed.increment();
+    }
+
+    // Una sesión viva solo se despierta; una suspendida se entrega para arrancar un hilo nuevo.
+    // Devuelve null si el token no existe o ya caducó.
+    Suspended resume(String token) {
+        Live l = live.get(token);
+        if (l != null) {
+            l.resumeRequested = true;
+            return null;
+        }
+        Suspended s = suspended.remove(token);
+        if (s != null) {
+            metrics.suspendedSessions.decrementAndGet();
+            metrics.sessionsResumed.increment();
+        }
+        return s;
+    }
+
+    boolean isLive(String token) {
+        return live.containsKey(token);
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        for (Suspended s : suspended.values()) {
+            // remove(token, s): si un RESUME la acaba de retomar, no se cuenta dos veces
+            if (now - s.suspendedAt > ttlMillis && suspended.remove(s.token, s)) {
+                metrics.suspendedSessions.decrementAndGet();
+                metrics.sessionsExpired.increment();
+            }
+        }
+    }
+}
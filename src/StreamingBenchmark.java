@@ -0,0 +1,128 @@
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Medición aproximada sin dependencias, para cuando no hay Maven: las cifras buenas salen del
+// módulo JMH (bench/pom.xml), que cubre además createPacket, la cabecera de secuencia y el
+// offer/poll del buffer. Aquí solo quedan las operaciones de microsegundos (búsqueda en el
+// catálogo, BUSCAR y el traspaso entre hilos), donde el coste de la llamada a través de Op,
+// compartida por todas las pruebas, no pesa frente a lo medido.
+// Uso: java StreamingBenchmark [ARCHIVOS_EN_CARPETA] [SEGUNDOS_POR_PRUEBA]
+// Salida: una línea CSV por prueba (nombre,ns_por_op,ops_por_segundo) para comparar contra la línea base.
+public class StreamingBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+
+    // Evita que el JIT elimine el trabajo medido
+    private static volatile long sink;
+
+    interface Op {
+        long run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        long measureNanos = (long) (seconds * 1_000_000_000L);
+
+        Path folder = Files.createTempDirectory("bench-songs");
+        for (int i = 0; i < fileCount; i++) {
+            Files.createFile(folder.resolve(String.format("cancion_%05d.wav", i)));
+        }
+        String lastSong = String.format("CANCION_%05d.WAV", fileCount - 1);
+
+        MusicServer server = new MusicServer(0, folder.toString());
+
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        byte[] buscar = ("BUSCAR:no_existe.wav").getBytes();
+        DatagramPacket request = new DatagramPacket(buscar, buscar.length, InetAddress.getLoopbackAddress(), 9);
+
+        JitterBuffer audioQueue = new JitterBuffer(512, new PlaybackStats());
+        byte[] audio = new byte[1024];
+
+        System.out.println("benchmark,ns_per_op,ops_per_sec");
+        try {
+            measure("handleRequest.BUSCAR(" + fileCount + ")", measureNanos, () -> {
+                server.handleRequest(socket, request);
+                return 1;
+            });
+            measure("findFileRobust(" + fileCount + ")", measureNanos, () -> {
+                File f = server.findFileRobust(lastSong);
+                return f == null ? 0 : 1;
+            });
+            measureHandoff("audioQueue.handoff", measureNanos, audioQueue, audio);
+        } finally {
+            socket.close();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(folder)) {
+                for (Path p : ds) Files.delete(p);
+            }
+            Files.delete(folder);
+        }
+    }
+
+    private static void measure(String name, long measureNanos, Op op) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) runFor(op, measureNanos / 2);
+        long[] result = runFor(op, measureNanos);
+        report(name, result[0], result[1]);
+    }
+
+    // Devuelve {operaciones, nanos}
+    private static long[] runFor(Op op, long nanos) throws Exception {
+        long ops = 0;
+        long acc = 0;
+        long start = System.nanoTime();
+        long deadline = start + nanos;
+        long now;
+        do {
+            // Lotes de 64 para que nanoTime no domine en las operaciones baratas
+            for (int i = 0; i < 64; i++) acc += op.run();
+            ops += 64;
+            now = System.nanoTime();
+        } while (now < deadline);
+        sink += acc;
+        return new long[] {ops, now - start};
+    }
+
+    // Productor (receptor GBN) y consumidor (hilo de audio) en hilos distintos, como en el cliente.
+    // Con objetivo fijo de un paquete: se mide el traspaso, no el re-buffering adaptativo. El fin
+    // lo marca un bloque centinela para que el consumidor no se quede esperando al timeout del poll.
+    private static void measureHandoff(String name, long measureNanos, JitterBuffer queue, byte[] audio)
+            throws Exception {
+        byte[] poison = new byte[0];
+        queue.fixTarget(1);
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            queue.reset(new PlaybackStats());
+            long deadline = System.nanoTime() + (round < WARMUP_ROUNDS ? measureNanos / 2 : measureNanos);
+            long[] consumed = {0};
+            Thread consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        byte[] data = queue.poll(100, TimeUnit.MILLISECONDS);
+                        if (data == poison) break;
+                        if (data != null) consumed[0]++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            long start = System.nanoTime();
+            consumer.start();
+            while (System.nanoTime() < deadline) {
+                queue.offer(audio, 100, TimeUnit.MILLISECONDS);
+            }
+            while (!queue.offer(poison, 100, TimeUnit.MILLISECONDS)) {
+                // Consumidor atrasado: el centinela entra en cuanto haya sitio
+            }
+            consumer.join();
+            long elapsed = System.nanoTime() - start;
+            if (round == WARMUP_ROUNDS) report(name, consumed[0], elapsed);
+        }
+    }
+
+    private static void report(String name, long ops, long nanos) {
+        double nsPerOp = ops == 0 ? 0 : (double) nanos / ops;
+        double opsPerSec = nanos == 0 ? 0 : ops * 1_000_000_000.0 / nanos;
+        System.out.println(String.format(Locale.ROOT, "%s,%.2f,%.0f", name, nsPerOp, opsPerSec));
+    }
+}